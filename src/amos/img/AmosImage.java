@@ -0,0 +1,85 @@
+// Copyright (C) 2012 David Gavilan Ruiz
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package amos.img;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+
+/**
+ * A sprite or icon of a SpriteBank.
+ * It keeps the planar data as read from the file; pixels are only
+ * converted when toBufferedImage() is called.
+ */
+public class AmosImage {
+
+    SpriteBank m_bank;
+    int m_width;
+    int m_height;
+    int m_depth;
+    int m_hotspotX;
+    int m_hotspotY;
+    ByteBuffer m_planarData;
+
+    /**
+     * @param width width in pixels (a multiple of 16)
+     * @param planarData planar data, read with absolute reads from index 0
+     */
+    public AmosImage(SpriteBank bank, int width, int height, int depth, int hotspotX, int hotspotY, ByteBuffer planarData) {
+        m_bank = bank;
+        m_width = width;
+        m_height = height;
+        m_depth = depth;
+        m_hotspotX = hotspotX;
+        m_hotspotY = hotspotY;
+        m_planarData = planarData;
+    }
+
+    public int getWidth() {
+        return m_width;
+    }
+
+    public int getHeight() {
+        return m_height;
+    }
+
+    /**
+     * Number of bitplanes
+     */
+    public int getDepth() {
+        return m_depth;
+    }
+
+    public int getHotspotX() {
+        return m_hotspotX;
+    }
+
+    public int getHotspotY() {
+        return m_hotspotY;
+    }
+
+    /**
+     * Planar data as stored in the bank, read-only
+     */
+    public ByteBuffer getPlanarData() {
+        return m_planarData.asReadOnlyBuffer();
+    }
+
+    public SpriteBank getBank() {
+        return m_bank;
+    }
+
+    /**
+     * Converts the image with the palette of its bank.
+     * A new BufferedImage is created on every call.
+     */
+    public BufferedImage toBufferedImage() {
+        PlanarImage img = new PlanarImage(m_width, m_height, m_depth, m_planarData, m_bank.getPalette());
+        return img.GetAsBufferedImage();
+    }
+}
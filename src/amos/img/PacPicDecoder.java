@@ -0,0 +1,132 @@
+// Copyright (C) 2012 David Gavilan Ruiz
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package amos.img;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.awt.image.DataBufferByte;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.IndexColorModel;
+import java.nio.ByteBuffer;
+
+/**
+ * Decompresses the picture data of AMOS Packed Pictures (Pac.Pic.)
+ * The picture is stored in 3 streams: PICDATA has the picture bytes,
+ * RLEDATA has one bit per picture byte telling whether a new byte is read
+ * or the last one is repeated, and POINTS has one bit per RLEDATA byte
+ * telling the same about the RLEDATA bytes.
+ * Picture bytes are stored by bitplane, then by "line lumps" of a few lines,
+ * then by column, so each byte goes straight into the chunky image.
+ * @see http://www.exotica.org.uk/wiki/AMOS_Pac.Pic._format
+ */
+public class PacPicDecoder {
+
+    int m_widthBytes;
+    int m_heightLumps;
+    int m_lumpHeight;
+    int m_numBitplanes;
+
+    /**
+     * @param widthBytes picture width in bytes (8 pixels per byte)
+     * @param heightLumps picture height in "line lumps"
+     * @param lumpHeight number of lines in a "line lump"
+     * @param numBitplanes number of bitplanes in the picture
+     */
+    public PacPicDecoder(int widthBytes, int heightLumps, int lumpHeight, int numBitplanes) {
+        m_widthBytes = widthBytes;
+        m_heightLumps = heightLumps;
+        m_lumpHeight = lumpHeight;
+        m_numBitplanes = numBitplanes;
+    }
+
+    public int getWidth() {
+        return 8 * m_widthBytes;
+    }
+
+    public int getHeight() {
+        return m_heightLumps * m_lumpHeight;
+    }
+
+    /**
+     * Decompresses the picture.
+     * @param data compressed data; absolute reads only, the buffer position is ignored
+     * @param picData offset of the PICDATA stream in data
+     * @param rleData offset of the RLEDATA stream in data
+     * @param points offset of the POINTS stream in data
+     */
+    public BufferedImage decode(ByteBuffer data, int picData, int rleData, int points, IndexColorModel palette)
+        throws java.io.StreamCorruptedException
+    {
+        BufferedImage img = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_BYTE_INDEXED, palette);
+        WritableRaster raster = img.getRaster();
+        byte[] chunky = ((DataBufferByte)raster.getDataBuffer()).getData();
+        int stride = ((ComponentSampleModel)raster.getSampleModel()).getScanlineStride();
+        try {
+            _decode(data, picData, rleData, points, chunky, stride);
+        } catch (IndexOutOfBoundsException exc) {
+            throw( new java.io.StreamCorruptedException("Pac.Pic. data is truncated") );
+        }
+        return img;
+    }
+
+    private void _decode(ByteBuffer data, int picData, int rleData, int points, byte[] chunky, int stride) {
+        int lumpStride = stride * m_lumpHeight;
+        int rbit = 7;
+        int rrbit = 6;
+        int picByte = 0xff & data.get(picData++);
+        int rleByte = 0xff & data.get(rleData++);
+        if ((data.get(points) & 0x80) != 0) {
+            rleByte = 0xff & data.get(rleData++);
+        }
+        for (int plane = 0; plane < m_numBitplanes; ++plane) {
+            int lumpStart = 0;
+            for (int j = 0; j < m_heightLumps; ++j) {
+                for (int k = 0; k < m_widthBytes; ++k) {
+                    int offset = lumpStart + 8 * k;
+                    for (int l = 0; l < m_lumpHeight; ++l) {
+                        // if the current RLE bit is set, read a new picture byte
+                        if ((rleByte & (1 << rbit--)) != 0) {
+                            picByte = 0xff & data.get(picData++);
+                        }
+                        if (picByte != 0) {
+                            orPixels(chunky, offset, PlanarImage.SPREAD_BITS[picByte] << plane);
+                        }
+                        offset += stride; // next line
+                        // out of RLE bits: the POINTS bit tells if a new RLE byte is needed
+                        if (rbit < 0) {
+                            rbit = 7;
+                            if ((data.get(points) & (1 << rrbit--)) != 0) {
+                                rleByte = 0xff & data.get(rleData++);
+                            }
+                            if (rrbit < 0) {
+                                rrbit = 7;
+                                ++points;
+                            }
+                        }
+                    }
+                }
+                lumpStart += lumpStride;
+            }
+        }
+    }
+
+    /**
+     * Adds one bitplane to 8 chunky pixels packed in a long, leftmost pixel first
+     */
+    static void orPixels(byte[] chunky, int offset, long pixels) {
+        chunky[offset]   |= (byte)(pixels >>> 56);
+        chunky[offset+1] |= (byte)(pixels >>> 48);
+        chunky[offset+2] |= (byte)(pixels >>> 40);
+        chunky[offset+3] |= (byte)(pixels >>> 32);
+        chunky[offset+4] |= (byte)(pixels >>> 24);
+        chunky[offset+5] |= (byte)(pixels >>> 16);
+        chunky[offset+6] |= (byte)(pixels >>> 8);
+        chunky[offset+7] |= (byte)(pixels);
+    }
+}
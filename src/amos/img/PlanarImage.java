@@ -10,13 +10,22 @@ package amos.img;
 
 import java.awt.image.BufferedImage;
 import java.awt.image.WritableRaster;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.ComponentSampleModel;
 import java.awt.image.IndexColorModel;
+import java.nio.ByteBuffer;
 
 /**
  * This class handles Planar Images, used mostly in Amiga computers
  */
 public class PlanarImage {
 
+    static final long[] SPREAD_BITS = createSpreadTable();
+    // HAM6 control bits: bits of the last color that are kept, and where the 4 data bits go
+    static final int[] HAM_MASKS = { 0x000000, 0xFFFF00, 0x00FFFF, 0xFF00FF };
+    static final int[] HAM_SHIFTS = { 0, 0, 16, 8 };
+
     BufferedImage m_img;
     int m_width;
     int m_height;
@@ -27,6 +36,17 @@ public class PlanarImage {
     }
     
     public PlanarImage(int width, int height, int depth, byte[] planarData, IndexColorModel colorModel) {
+        this(width, height, depth, (planarData == null) ? null : ByteBuffer.wrap(planarData), colorModel);
+    }
+    
+    /**
+     * @param planarData planar data, read with absolute reads from index 0
+     * @param colorModel with 6 bitplanes, it's extended to Extra-Half-Brite if it has less than 64 colors
+     */
+    public PlanarImage(int width, int height, int depth, ByteBuffer planarData, IndexColorModel colorModel) {
+        if (depth > 5 && colorModel.getMapSize() < 64) {
+            colorModel = createExtraHalfBritePalette(colorModel);
+        }
         m_img = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, colorModel);
         m_width=width;
         m_height=height;
@@ -38,29 +58,68 @@ public class PlanarImage {
         return m_img ;
     }
     
-    private void PlanarToChunky(byte[] planarData) {
+    /**
+     * Converts all the bitplanes at once, 8 pixels at a time.
+     * Pixels are written straight into the byte buffer of the image.
+     */
+    private void PlanarToChunky(ByteBuffer planarData) {
+        if (planarData == null) return;
         WritableRaster raster = m_img.getRaster();
+        byte[] chunky = ((DataBufferByte)raster.getDataBuffer()).getData();
+        int stride = ((ComponentSampleModel)raster.getSampleModel()).getScanlineStride();
         int numBytesWidth = m_width >> 3 ; // 8 pixels per byte
-        int index = 0;
-        for (int bit=0;bit<m_numBitplanes;++bit) {
-            for (int j=0;j<m_height;++j){
-                for (int i=0;i<numBytesWidth;++i) {
-                    int b = 0xff & (int)planarData[index++];
-                    for (int p = 0; p<8; ++p) {
-                        int bitPixel = (b>>p) & 0x01;
-                        bitPixel = bitPixel << bit ;
-                        int x = 8 * i + (7-p) ;
-                        if (bit > 0) bitPixel |= raster.getSample(x,j,0);
-                        raster.setSample(x,j,0, bitPixel);
-                    }
+        int planeSize = numBytesWidth * m_height;
+        for (int j=0;j<m_height;++j) {
+            int planarIndex = j * numBytesWidth;
+            int chunkyIndex = j * stride;
+            for (int i=0;i<numBytesWidth;++i) {
+                // gather the same byte of every bitplane
+                long pixels = 0;
+                int index = planarIndex + i;
+                for (int bit=0;bit<m_numBitplanes;++bit) {
+                    pixels |= SPREAD_BITS[0xff & planarData.get(index)] << bit;
+                    index += planeSize;
                 }
+                writePixels(chunky, chunkyIndex, pixels);
+                chunkyIndex += 8;
             }
         }
     }
+    
+    /**
+     * Writes 8 chunky pixels packed in a long, leftmost pixel first
+     */
+    static void writePixels(byte[] chunky, int offset, long pixels) {
+        chunky[offset]   = (byte)(pixels >>> 56);
+        chunky[offset+1] = (byte)(pixels >>> 48);
+        chunky[offset+2] = (byte)(pixels >>> 40);
+        chunky[offset+3] = (byte)(pixels >>> 32);
+        chunky[offset+4] = (byte)(pixels >>> 24);
+        chunky[offset+5] = (byte)(pixels >>> 16);
+        chunky[offset+6] = (byte)(pixels >>> 8);
+        chunky[offset+7] = (byte)(pixels);
+    }
+    
+    /**
+     * Spreads the 8 bits of a byte into the lowest bit of each byte of a long,
+     * keeping the order: the most significant bit is the leftmost pixel.
+     */
+    private static long[] createSpreadTable() {
+        long[] table = new long[256];
+        for (int b = 0; b < 256; ++b) {
+            long spread = 0;
+            for (int p = 0; p < 8; ++p) {
+                spread |= (long)((b >> p) & 0x01) << (8 * p);
+            }
+            table[b] = spread;
+        }
+        return table;
+    }
+    
     /**
      * Create a simple color model with a gray gradient
      */
-    private static IndexColorModel createGrayGradientPalette() {        
+    public static IndexColorModel createGrayGradientPalette() {        
         byte[] r = new byte[32];
         byte[] g = new byte[32];
         byte[] b = new byte[32];
@@ -73,6 +132,69 @@ public class PlanarImage {
         return new IndexColorModel(5, 32, r, g, b);
     }
     
+    /**
+     * Extra-Half-Brite palette for 6 bitplanes: the 32 colors of the palette,
+     * and then the same colors at half brightness
+     */
+    public static IndexColorModel createExtraHalfBritePalette(IndexColorModel palette) {
+        byte[] r = new byte[64];
+        byte[] g = new byte[64];
+        byte[] b = new byte[64];
+        
+        for (int i = 0; i < 32; i++) {
+            int rgb = (i < palette.getMapSize()) ? palette.getRGB(i) : 0;
+            r[i] = (byte) (rgb >> 16);
+            g[i] = (byte) (rgb >> 8);
+            b[i] = (byte) rgb;
+            // the 4-bit Amiga components are halved
+            r[i+32] = (byte) ( ((0xff & (rgb >> 16)) >> 5)<<4 );
+            g[i+32] = (byte) ( ((0xff & (rgb >> 8)) >> 5)<<4 );
+            b[i+32] = (byte) ( ((0xff & rgb) >> 5)<<4 );
+        }
+        return new IndexColorModel(6, 64, r, g, b);
+    }
+    
+    /**
+     * Converts a HAM6 image to direct color. A pixel is either one of the first
+     * 16 colors (control bits 00), or the pixel on its left with its blue (01),
+     * red (10) or green (11) component replaced by the 4 data bits.
+     * Every line starts with color 0. Each of the 64 pixel values is turned into
+     * a mask and a value beforehand, so each pixel takes an AND and an OR.
+     * @param ham image with the 6-bit pixels, e.g. from PacPicDecoder
+     * @param palette base colors
+     */
+    public static BufferedImage hamToRGB(BufferedImage ham, IndexColorModel palette) {
+        int[] masks = new int[64];
+        int[] values = new int[64];
+        for (int p = 0; p < 64; ++p) {
+            int control = p >> 4;
+            if (control == 0) {
+                values[p] = (p < palette.getMapSize()) ? 0xffffff & palette.getRGB(p) : 0;
+            } else {
+                values[p] = ((p & 0x0f) << 4) << HAM_SHIFTS[control];
+            }
+            masks[p] = HAM_MASKS[control];
+        }
+        int width = ham.getWidth();
+        int height = ham.getHeight();
+        WritableRaster raster = ham.getRaster();
+        byte[] chunky = ((DataBufferByte)raster.getDataBuffer()).getData();
+        int stride = ((ComponentSampleModel)raster.getSampleModel()).getScanlineStride();
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
+        for (int j = 0; j < height; ++j) {
+            int color = values[0];
+            int chunkyIndex = j * stride;
+            int rgbIndex = j * width;
+            for (int i = 0; i < width; ++i) {
+                int p = 0x3f & chunky[chunkyIndex + i];
+                color = (color & masks[p]) | values[p];
+                pixels[rgbIndex + i] = color;
+            }
+        }
+        return img;
+    }
+    
     /**
      * Decodes 64 bytes of data into a 32-color paletter
      */
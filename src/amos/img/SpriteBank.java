@@ -0,0 +1,64 @@
+// Copyright (C) 2012 David Gavilan Ruiz
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package amos.img;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * The images of a Sprite or Icon bank, and their shared color palette
+ */
+public class SpriteBank {
+
+    List<AmosImage> m_images;
+    IndexColorModel m_palette;
+
+    public SpriteBank(int numImages) {
+        m_images = new ArrayList<AmosImage>(numImages);
+        m_palette = PlanarImage.createGrayGradientPalette();
+    }
+
+    public void addImage(AmosImage image) {
+        m_images.add(image);
+    }
+
+    public List<AmosImage> getImages() {
+        return Collections.unmodifiableList(m_images);
+    }
+
+    public AmosImage getImage(int index) {
+        return m_images.get(index);
+    }
+
+    public int size() {
+        return m_images.size();
+    }
+
+    public IndexColorModel getPalette() {
+        return m_palette;
+    }
+
+    public void setPalette(IndexColorModel palette) {
+        m_palette = palette;
+    }
+
+    /**
+     * Converts all the images
+     */
+    public List<BufferedImage> toBufferedImages() {
+        List<BufferedImage> imgList = new ArrayList<BufferedImage>(m_images.size());
+        for (AmosImage image : m_images) {
+            imgList.add(image.toBufferedImage());
+        }
+        return imgList;
+    }
+}
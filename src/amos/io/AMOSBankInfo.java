@@ -0,0 +1,100 @@
+// Copyright (C) 2012 David Gavilan Ruiz
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package amos.io ;
+
+/**
+ * Entry of the bank directory of an AMOSFile: where a bank is and what it contains
+ */
+public class AMOSBankInfo
+{
+    int          m_number ;
+    AMOSBankType m_type ;
+    String       m_name ;
+    boolean      m_isChipMemory ;
+    int          m_flags ;
+    long         m_offset ;
+    long         m_dataOffset ;
+    long         m_size ;
+
+    AMOSBankInfo(int number, AMOSBankType type, String name, boolean isChipMemory, int flags,
+                 long offset, long dataOffset, long size)
+    {
+        m_number = number;
+        m_type = type;
+        m_name = name;
+        m_isChipMemory = isChipMemory;
+        m_flags = flags;
+        m_offset = offset;
+        m_dataOffset = dataOffset;
+        m_size = size;
+    }
+
+    /**
+     * Bank number, as used by AMOS instructions. Sprites are bank 1, and icons bank 2.
+     */
+    public int getNumber()
+    {
+        return m_number;
+    }
+
+    /**
+     * SPRITEBANK, ICONBANK, a memory bank subtype, or MEMORYBANK for unknown memory banks
+     */
+    public AMOSBankType getType()
+    {
+        return m_type;
+    }
+
+    /**
+     * Bank name, e.g. "Pac.Pic.", or the bank ID for sprites and icons
+     */
+    public String getName()
+    {
+        return m_name;
+    }
+
+    public boolean isChipMemory()
+    {
+        return m_isChipMemory;
+    }
+
+    public int getFlags()
+    {
+        return m_flags;
+    }
+
+    /**
+     * Offset in the file of the bank ID ("AmSp", "AmIc" or "AmBk")
+     */
+    public long getOffset()
+    {
+        return m_offset;
+    }
+
+    /**
+     * Offset in the file of the bank data, after all the bank headers
+     */
+    public long getDataOffset()
+    {
+        return m_dataOffset;
+    }
+
+    /**
+     * Size in bytes of the bank data
+     */
+    public long getSize()
+    {
+        return m_size;
+    }
+
+    public String toString()
+    {
+        return "Bank "+m_number+": "+m_name+(m_isChipMemory?" (chip) ":" ")+m_size+" bytes";
+    }
+}
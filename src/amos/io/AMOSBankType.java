@@ -16,6 +16,7 @@ public enum AMOSBankType {
     // The definitions below are actually subtypes of MEMORYBANK
     PACKED_PICTURE("Pac.Pic."),
     TRACKER("Tracker "),
+    MUSIC("Music   "),
     SAMPLES("Samples ");
 
     private final String _idString;
@@ -0,0 +1,58 @@
+// Copyright (C) 2012 David Gavilan Ruiz
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package amos.io ;
+
+/**
+ * Source of big-endian data used by the AMOS decoders.
+ * Every read advances the current position. Reading past the end of the
+ * data throws java.io.EOFException, so truncated files are detected.
+ */
+public interface AMOSByteSource extends java.io.Closeable
+{
+    /**
+     * Reads one unsigned byte
+     */
+    int readUnsignedByte() throws java.io.IOException ;
+
+    /**
+     * Reads one unsigned big-endian 16-bit word
+     */
+    int readUnsignedWord() throws java.io.IOException ;
+
+    /**
+     * Reads one big-endian 32-bit integer
+     */
+    int readInt() throws java.io.IOException ;
+
+    /**
+     * Reads exactly length bytes into the given buffer
+     */
+    void readFully(byte[] buffer, int offset, int length) throws java.io.IOException ;
+
+    /**
+     * Returns the next length bytes as a read-only big-endian buffer,
+     * without copying them if possible.
+     */
+    java.nio.ByteBuffer readBuffer(int length) throws java.io.IOException ;
+
+    /**
+     * Skips exactly numBytes bytes
+     */
+    void skip(long numBytes) throws java.io.IOException ;
+
+    /**
+     * Offset in bytes from the beginning of the source
+     */
+    long position() ;
+
+    /**
+     * Total size in bytes, or -1 if unknown
+     */
+    long size() ;
+}
@@ -0,0 +1,80 @@
+// Copyright (C) 2012 David Gavilan Ruiz
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package amos.io ;
+
+/**
+ * Position of an AMOSTokenReader between two lines, with everything needed
+ * to go on reading from there later: the file offset of the next line, the
+ * amount of source code read, the line number and the decryption state.
+ * It can be saved as a line of text with toString() and read with parse().
+ */
+public class AMOSCursor
+{
+    long    m_offset ;
+    long    m_readBytes ;
+    int     m_lineNumber ;
+    boolean m_isDecrypting ;
+    int     m_key ;
+    int     m_key2 ;
+    int     m_key3 ;
+
+    AMOSCursor(long offset, long readBytes, int line, boolean isDecrypting, int key, int key2, int key3)
+    {
+        m_offset = offset;
+        m_readBytes = readBytes;
+        m_lineNumber = line;
+        m_isDecrypting = isDecrypting;
+        m_key = key;
+        m_key2 = key2;
+        m_key3 = key3;
+    }
+
+    /**
+     * Offset in the file of the next line
+     */
+    public long getOffset()
+    {
+        return m_offset;
+    }
+
+    /**
+     * Amount of source code before the next line
+     */
+    public long getReadBytes()
+    {
+        return m_readBytes;
+    }
+
+    /**
+     * Number of lines read, i.e. the next line from 0
+     */
+    public int getLine()
+    {
+        return m_lineNumber;
+    }
+
+    public String toString()
+    {
+        return m_offset+" "+m_readBytes+" "+m_lineNumber+" "+(m_isDecrypting ? 1 : 0)+" "+m_key+" "+m_key2+" "+m_key3;
+    }
+
+    /**
+     * Reads a cursor saved with toString()
+     * @throws IllegalArgumentException if it's not a cursor
+     */
+    public static AMOSCursor parse(String text)
+    {
+        String[] fields = text.trim().split(" ");
+        if (fields.length != 7) {
+            throw( new IllegalArgumentException("Not a cursor: "+text) );
+        }
+        return new AMOSCursor(Long.parseLong(fields[0]), Long.parseLong(fields[1]), Integer.parseInt(fields[2]),
+            fields[3].equals("1"), Integer.parseInt(fields[4]), Integer.parseInt(fields[5]), Integer.parseInt(fields[6]));
+    }
+}
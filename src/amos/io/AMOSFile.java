@@ -0,0 +1,275 @@
+// Copyright (C) 2012 David Gavilan Ruiz
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package amos.io ;
+
+import java.io.File ;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * Random access to the parts of an AMOS file.
+ * On open, the source code is skipped and the bank headers are scanned to
+ * build a directory of banks. Then the source or any bank can be decoded
+ * on demand with their own AMOSFileInputStream.
+ */
+public class AMOSFile implements java.io.Closeable
+{
+    static final int HEADER_SIZE = 20; // 16-byte header + source size
+
+    ByteBufferSource   m_source ;
+    long               m_sourceSizeBytes ;
+    boolean            m_isSanityTested ;
+    List<AMOSBankInfo> m_banks ;
+    AMOSSourceIndex    m_sourceIndex = null ;
+    boolean            m_isVerbose ;
+
+    public AMOSFile(File file, boolean isVerbose)
+        throws java.io.FileNotFoundException, amos.io.UnsupportedFormat, java.io.IOException
+    {
+        this(ByteBufferSource.map(file), isVerbose);
+    }
+
+    public AMOSFile(ByteBufferSource source, boolean isVerbose)
+        throws amos.io.UnsupportedFormat, java.io.IOException
+    {
+        m_source = source;
+        m_isVerbose = isVerbose;
+        // checks the header
+        AMOSFileInputStream stream = new AMOSFileInputStream(m_source.duplicate(), false);
+        m_sourceSizeBytes = stream.m_sourceSizeBytes;
+        m_isSanityTested = stream.isSanityTested();
+        m_banks = Collections.unmodifiableList(_scanBanks());
+    }
+
+    public long getSourceSizeBytes()
+    {
+        return m_sourceSizeBytes;
+    }
+
+    /**
+     * All the banks, in file order
+     */
+    public List<AMOSBankInfo> getBanks()
+    {
+        return m_banks;
+    }
+
+    /**
+     * Finds a bank by its number, or null if there's no such bank
+     */
+    public AMOSBankInfo getBank(int bankNumber)
+    {
+        for (AMOSBankInfo bank : m_banks) {
+            if (bank.getNumber() == bankNumber) return bank;
+        }
+        return null;
+    }
+
+    /**
+     * Stream to decode the source code with readLine()
+     */
+    public AMOSFileInputStream openSource() throws java.io.IOException
+    {
+        return _open(HEADER_SIZE, 0);
+    }
+
+    /**
+     * Stream to decode one bank, starting with readBankType()
+     */
+    public AMOSFileInputStream openBank(AMOSBankInfo bank) throws java.io.IOException
+    {
+        return _open(bank.getOffset(), m_sourceSizeBytes);
+    }
+
+    /**
+     * Line offsets and procedures of the source code, scanned on the first call
+     */
+    public synchronized AMOSSourceIndex getSourceIndex() throws java.io.IOException
+    {
+        if (m_sourceIndex == null) {
+            m_sourceIndex = new AMOSSourceIndex(m_source, HEADER_SIZE, m_sourceSizeBytes);
+        }
+        return m_sourceIndex;
+    }
+
+    /**
+     * Uses an index saved before, instead of scanning the source code again
+     * @throws UnsupportedFormat if it's the index of a different source code
+     */
+    public synchronized void setSourceIndex(AMOSSourceIndex index) throws UnsupportedFormat
+    {
+        if (index.getOffset() != HEADER_SIZE || index.getSizeBytes() != m_sourceSizeBytes) {
+            throw( new UnsupportedFormat("The source index doesn't match this file") );
+        }
+        m_sourceIndex = index;
+    }
+
+    /**
+     * Pushes the lines [from, to) of the source code to the handler, from line 0,
+     * without parsing the lines before them. Inside a procedure, the lines are
+     * read from the Procedure line, in case it's encrypted.
+     */
+    public void decodeRange(int from, int to, AMOSTokenHandler handler) throws java.io.IOException
+    {
+        AMOSSourceIndex index = getSourceIndex();
+        if (from >= to) {
+            return;
+        }
+        int chunk = index.getChunk(from);
+        int start = index.isProcedure(chunk) ? index.getChunkStartLine(chunk) : from;
+        long offset = index.getLineOffset(start);
+        AMOSTokenReader reader = openSourceRange(offset, index.getLineEndOffset(to - 1) - offset);
+        for (int line = start; line < from; ++line) {
+            reader.skipLine();
+        }
+        reader.parse(handler);
+    }
+
+    /**
+     * Text of the lines [from, to) of the source code, from line 0, one line separator after each
+     */
+    public String decodeRange(int from, int to) throws java.io.IOException
+    {
+        java.io.StringWriter text = new java.io.StringWriter();
+        decodeRange(from, to, new AMOSSourcePrinter(text));
+        return text.toString();
+    }
+
+    /**
+     * Text of a single line of the source code, from line 0, without line separator
+     */
+    public String decodeLine(int line) throws java.io.IOException
+    {
+        AMOSSourcePrinter printer = new AMOSSourcePrinter();
+        decodeRange(line, line + 1, printer);
+        return printer.toString();
+    }
+
+    /**
+     * Parser of the source code lines in the given range, e.g. a chunk of the source index.
+     * Each reader has its own position, so several can be used at once.
+     * @param offset offset of a line in the file
+     * @param sizeBytes size of whole lines
+     */
+    public AMOSTokenReader openSourceRange(long offset, long sizeBytes) throws java.io.IOException
+    {
+        ByteBufferSource source = m_source.duplicate();
+        source.seek(offset);
+        return new AMOSTokenReader(source, sizeBytes, 0);
+    }
+
+    /**
+     * Bytes of the file in the given range, read-only and without copying them
+     */
+    public java.nio.ByteBuffer getBytes(long offset, long length) throws java.io.IOException
+    {
+        if (length > Integer.MAX_VALUE) {
+            throw( new java.io.IOException("Range too large: "+length+" bytes") );
+        }
+        ByteBufferSource source = m_source.duplicate();
+        source.seek(offset);
+        return source.readBuffer((int)length);
+    }
+
+    /**
+     * Bytes of a whole bank, headers included
+     */
+    public java.nio.ByteBuffer getBytes(AMOSBankInfo bank) throws java.io.IOException
+    {
+        return getBytes(bank.getOffset(), bank.getDataOffset() + bank.getSize() - bank.getOffset());
+    }
+
+    public void close() throws java.io.IOException
+    {
+        m_source.close();
+    }
+
+    /**
+     * New stream at the given file offset, with readBytes of source code already read
+     */
+    private AMOSFileInputStream _open(long offset, long readBytes) throws java.io.IOException
+    {
+        ByteBufferSource source = m_source.duplicate();
+        source.seek(offset);
+        AMOSFileInputStream stream = new AMOSFileInputStream(source, m_sourceSizeBytes, readBytes, m_isVerbose);
+        stream.m_isSanityTested = m_isSanityTested;
+        return stream;
+    }
+
+    /**
+     * Reads just the bank headers, skipping all the data
+     */
+    private List<AMOSBankInfo> _scanBanks() throws java.io.IOException, java.io.StreamCorruptedException
+    {
+        List<AMOSBankInfo> banks = new ArrayList<AMOSBankInfo>();
+        ByteBufferSource source = m_source.duplicate();
+        source.seek(HEADER_SIZE + m_sourceSizeBytes);
+        if (source.position() == source.size()) {
+            return banks; // no banks at all
+        }
+        byte[] id = new byte[8];
+        source.readFully(id, 0, 4);
+        if (!new String(id, 0, 4).equals("AmBs")) {
+            throw( new java.io.StreamCorruptedException("File doesn't contain description of memory banks!") );
+        }
+        int numBanks = source.readUnsignedWord();
+        for (int i=0; i<numBanks; ++i) {
+            long offset = source.position();
+            source.readFully(id, 0, 4);
+            String idString = new String(id, 0, 4);
+            AMOSBankType bankType = AMOSBankType.GetAMOSBankTypeById(idString);
+            switch (bankType) {
+                case SPRITEBANK:
+                case ICONBANK:
+                {
+                    long dataOffset = source.position();
+                    int numImages = source.readUnsignedWord();
+                    for (int j=0; j<numImages; ++j) {
+                        int width = source.readUnsignedWord();
+                        int height = source.readUnsignedWord();
+                        int depth = source.readUnsignedWord();
+                        source.skip(4); // hot spot
+                        source.skip(2L * width * height * depth);
+                    }
+                    source.skip(64); // color palette
+                    int number = (bankType == AMOSBankType.SPRITEBANK) ? 1 : 2;
+                    banks.add(new AMOSBankInfo(number, bankType, idString, true, 0,
+                        offset, dataOffset, source.position() - dataOffset));
+                    break;
+                }
+                case MEMORYBANK:
+                {
+                    int number = source.readUnsignedWord();
+                    boolean isChipMemory = (source.readUnsignedWord()==0);
+                    int sizeAndFlags = source.readInt();
+                    int flags = 0x0f & (sizeAndFlags >>> 28);
+                    int size = (0x0fffffff & sizeAndFlags) - 8;
+                    source.readFully(id, 0, 8);
+                    String name = new String(id);
+                    AMOSBankType subtype = AMOSBankType.GetAMOSBankTypeById(name);
+                    if (subtype == AMOSBankType.UNKNOWN) {
+                        subtype = AMOSBankType.MEMORYBANK;
+                    }
+                    long dataOffset = source.position();
+                    source.skip(size);
+                    banks.add(new AMOSBankInfo(number, subtype, name, isChipMemory, flags,
+                        offset, dataOffset, size));
+                    break;
+                }
+                default:
+                    throw( new java.io.StreamCorruptedException("Unknown memory bank!") );
+            }
+            if (m_isVerbose) {
+                System.err.println(" "+banks.get(banks.size()-1));
+            }
+        }
+        return banks;
+    }
+}
@@ -9,24 +9,28 @@
 package amos.io ;
 
 import java.io.File ;
-import java.io.FileInputStream ;
 import java.io.FileNotFoundException ;
-import java.util.Map;
-import java.util.HashMap;
 import java.util.List;
 import java.util.ArrayList;
 import java.awt.image.BufferedImage;
 import java.awt.image.IndexColorModel;
 
 import amos.img.*;
+import amos.snd.*;
 
 /**
  * @see http://www.exotica.org.uk/wiki/AMOS_file_formats
  * @see http://www.amigacoding.com/index.php/AMOS:Picture_Bank_format
  * @see http://www.amigacoding.com/index.php/AMOS:Extensions
  */
-public class AMOSFileInputStream
+public class AMOSFileInputStream implements java.io.Closeable
 {
+    static final int PACPIC_SCREEN_ID = 0x12031990;
+    static final int PACPIC_PICTURE_ID = 0x06071963;
+    static final int BPLCON0_HAM = 0x0800;
+    static final int COPY_SIZE = 64 * 1024;
+    static final String LINE_SEPARATOR = System.getProperty("line.separator");
+    
     public static final String[] VALID_HEADERS = {
         // 16-byte header, Tested?, Saved from which AMOS?
         "AMOS Pro101V\0\0\0\0",//	Yes	AMOS Professional
@@ -40,18 +44,18 @@ public class AMOSFileInputStream
         "AMOS Basic v1.3 ",//	No	AMOS The Creator v1.3
         "AMOS Basic v1.00"//	No	AMOS The Creator v1.0 - v1.2
     };
-    FileInputStream m_stream ;
+    AMOSByteSource m_source ;
     boolean m_isSanityTested ;
     long    m_sourceSizeBytes ;
-    long    m_readBytes ;
+    AMOSTokenReader m_tokens ;
+    AMOSSourcePrinter m_printer = new AMOSSourcePrinter();
     int     m_numBanks ;
     int     m_currentBankSize;
     int     m_currentBankNumber;
+    String  m_currentBankName = "";
+    boolean m_isCurrentBankChip;
+    int     m_currentBankFlags;
     byte[]  m_tmp4B = {0,0,0,0};
-    byte[]  m_tmp2B = {0,0};
-    byte[]  m_tmp1B = {0};
-    Map<Integer,String> m_tokenMap;
-    Map<Integer,String> m_extensions;
     
     boolean m_isVerbose; 
     
@@ -60,15 +64,27 @@ public class AMOSFileInputStream
         return m_isSanityTested ;
     }
     
+    /**
+     * Opens an AMOS file, memory-mapping its contents
+     */
     public AMOSFileInputStream(java.io.File file, boolean isVerbose) 
         throws java.io.FileNotFoundException, amos.io.UnsupportedFormat, java.io.IOException
+    {
+        this(ByteBufferSource.map(file), isVerbose);
+    }
+    
+    /**
+     * Reads an AMOS file from any byte source, e.g. a StreamByteSource
+     */
+    public AMOSFileInputStream(AMOSByteSource source, boolean isVerbose) 
+        throws amos.io.UnsupportedFormat, java.io.IOException
     {
         m_isVerbose = isVerbose;
-        m_stream = new FileInputStream(file);
+        m_source = source;
         String headerString ;
         try {
             byte[] header = new byte[16];
-            m_stream.read(header);
+            m_source.readFully(header, 0, header.length);
             headerString = new String(header);
             
         } catch (java.io.IOException exc) {
@@ -79,26 +95,86 @@ public class AMOSFileInputStream
             throw( new amos.io.UnsupportedFormat(headerString) );
         }
         
-        m_stream.read(m_tmp4B); // big endian unsigned
         // there's no unsigned int in Java, so store it in a long
-        m_sourceSizeBytes = readUnsignedInt(m_tmp4B);
-        m_readBytes = 0;
+        m_sourceSizeBytes = _read4BAsUInt(); // big endian unsigned
+        m_tokens = new AMOSTokenReader(m_source, m_sourceSizeBytes, 0);
         m_numBanks = 0;
         m_currentBankSize = 0;
         m_currentBankNumber = 0;
-
-        m_tokenMap = new HashMap<Integer,String>();
-        m_extensions = new HashMap<Integer,String>();
-        _initTokenMap();
         //System.out.println("source size: "+m_sourceSizeBytes);
     }
     
+    /**
+     * Opens an AMOS file to go on decoding its source code from a cursor,
+     * e.g. one saved by an interrupted decode
+     */
+    public AMOSFileInputStream(java.io.File file, AMOSCursor cursor, boolean isVerbose)
+        throws java.io.FileNotFoundException, amos.io.UnsupportedFormat, java.io.IOException
+    {
+        this(ByteBufferSource.map(file), cursor, isVerbose);
+    }
+    
+    /**
+     * Reads an AMOS file from a source that can seek, going on from a cursor
+     */
+    public AMOSFileInputStream(ByteBufferSource source, AMOSCursor cursor, boolean isVerbose)
+        throws amos.io.UnsupportedFormat, java.io.IOException
+    {
+        this(source, isVerbose);
+        if (cursor.getReadBytes() > m_sourceSizeBytes) {
+            throw( new java.io.StreamCorruptedException("The cursor is after the source code") );
+        }
+        source.seek(cursor.getOffset());
+        m_tokens = new AMOSTokenReader(m_source, m_sourceSizeBytes, cursor);
+    }
+    
+    /**
+     * Stream over a source that is already past the header, used by AMOSFile.
+     * readBytes is the amount of source code already skipped.
+     */
+    AMOSFileInputStream(AMOSByteSource source, long sourceSizeBytes, long readBytes, boolean isVerbose)
+    {
+        m_isVerbose = isVerbose;
+        m_source = source;
+        m_sourceSizeBytes = sourceSizeBytes;
+        m_tokens = new AMOSTokenReader(m_source, m_sourceSizeBytes, readBytes);
+        m_numBanks = 0;
+        m_currentBankSize = 0;
+        m_currentBankNumber = 0;
+    }
+    
+    /**
+     * Releases the underlying byte source
+     */
+    public void close() throws java.io.IOException
+    {
+        m_source.close();
+    }
+    
     /**
      * Checks if there are still tokens to read
      */
     public boolean isSourceCodeEnd()
     {
-        return ( m_readBytes >= m_sourceSizeBytes );
+        return !m_tokens.hasNext();
+    }
+    
+    /**
+     * Skips the rest of the source code without decoding it,
+     * using the source size from the file header
+     */
+    public void skipSourceCode() throws java.io.IOException
+    {
+        m_tokens.skipSource();
+    }
+    
+    /**
+     * Pull parser of the source code, for tools that don't need the text.
+     * It shares the position of this stream.
+     */
+    public AMOSTokenReader getTokenReader()
+    {
+        return m_tokens;
     }
     
     /**
@@ -115,13 +191,11 @@ public class AMOSFileInputStream
     public int readNumBanks() throws java.io.IOException, java.io.StreamCorruptedException
     {
         // Check for AmBs string
-        m_stream.read(m_tmp4B);
-        String text = new String(m_tmp4B);
+        String text = _read4BAsString();
         if (!text.equals("AmBs")) {
             throw( new java.io.StreamCorruptedException("File doesn't contain description of memory banks!") ); 
         }
-        m_stream.read(m_tmp2B);
-        m_numBanks = readUnsignedWord(m_tmp2B);
+        m_numBanks = _read2BAsUInt();
         return m_numBanks ;
     }
     
@@ -130,8 +204,7 @@ public class AMOSFileInputStream
      */
     public AMOSBankType readBankType() throws java.io.IOException, java.io.StreamCorruptedException
     {
-        m_stream.read(m_tmp4B);
-        String text = new String(m_tmp4B);
+        String text = _read4BAsString();
         AMOSBankType bankType = AMOSBankType.GetAMOSBankTypeById(text);
         if (bankType==AMOSBankType.UNKNOWN) {
             throw( new java.io.StreamCorruptedException("Unknown memory bank!") ); 
@@ -144,9 +217,17 @@ public class AMOSFileInputStream
      */
     public List<BufferedImage> readImages() throws java.io.IOException, java.io.StreamCorruptedException
     {
-        m_stream.read(m_tmp2B);
-        int numImages = readUnsignedWord(m_tmp2B);
-        List<BufferedImage> imgList = new ArrayList<BufferedImage>(numImages);
+        return readSpriteBank().toBufferedImages();
+    }
+    
+    /**
+     * Reads Sprites or Icons, without converting their pixels.
+     * With a memory-mapped source, the planar data is not copied either.
+     */
+    public SpriteBank readSpriteBank() throws java.io.IOException, java.io.StreamCorruptedException
+    {
+        int numImages = _read2BAsUInt();
+        SpriteBank bank = new SpriteBank(numImages);
         if (m_isVerbose) {
             System.err.println("... reading "+numImages+" images");
         }
@@ -154,48 +235,28 @@ public class AMOSFileInputStream
             int width = 0, height = 0, depth = 0;
             int hotspotX = 0, hotspotY = 0;
             int dataSize = 0;
-            byte[] imageData = null ;
             
-            m_stream.read(m_tmp2B);
-            width = readUnsignedWord(m_tmp2B);
-            m_stream.read(m_tmp2B);
-            height = readUnsignedWord(m_tmp2B);
-            m_stream.read(m_tmp2B);
-            depth = readUnsignedWord(m_tmp2B);
+            width = _read2BAsUInt();
+            height = _read2BAsUInt();
+            depth = _read2BAsUInt();
             if (depth<1 || depth>6) {
                 throw( new java.io.StreamCorruptedException("Incompatible image depth("+depth+")!") );
             }
-            m_stream.read(m_tmp2B);
-            hotspotX = readUnsignedWord(m_tmp2B);
-            m_stream.read(m_tmp2B);
-            hotspotY = readUnsignedWord(m_tmp2B);
+            hotspotX = _read2BAsUInt();
+            hotspotY = _read2BAsUInt();
             dataSize = 2 * width * height * depth ;
             if (m_isVerbose) {
                 System.err.println("img("+i+")="+(16*width)+"x"+height+"x"+depth+", ("+hotspotX+", "+hotspotY+")");
             }
-            if ( dataSize > 0 ) {
-                imageData = new byte[dataSize];
-                m_stream.read(imageData);
-                // now convert planar data... 
-            }
-            // construct image 
+            java.nio.ByteBuffer imageData = m_source.readBuffer(dataSize);
             // -- width is in 16-bit words
-            PlanarImage img = new PlanarImage(width*16, height, depth, imageData);
-            // add to list
-            imgList.add(img.GetAsBufferedImage());
+            bank.addImage(new AmosImage(bank, width*16, height, depth, hotspotX, hotspotY, imageData));
         }
         // after all the images comes the color palette
         byte[] paletteData = new byte[64];
-        m_stream.read(paletteData);
-        // decode color palette
-        IndexColorModel palette = PlanarImage.decodeColorPalette(paletteData);
-        // replace color palettes
-        for (int i=0;i<imgList.size();++i) {
-            BufferedImage image = imgList.get(i);
-            imgList.set(i, new BufferedImage(palette,image.getRaster(), false, null));
-        }
-        
-        return imgList ;
+        m_source.readFully(paletteData, 0, paletteData.length);
+        bank.setPalette(PlanarImage.decodeColorPalette(paletteData));
+        return bank;
     }
     
     /**
@@ -211,25 +272,26 @@ public class AMOSFileInputStream
         String bankName = "";
         byte[] tmp8B = new byte[8];
         // read header
-        m_stream.read(m_tmp2B);
-        bankNumber = readUnsignedWord(m_tmp2B);
-        m_stream.read(m_tmp2B);
-        isChipMemory = (readUnsignedWord(m_tmp2B)==0);
-        m_stream.read(m_tmp4B);
-        flags = 0x0f & (m_tmp4B[0] >> 4);
-        m_tmp4B[0] = (byte)( 0x0f & m_tmp4B[0] );
-        bankSize = (int)readUnsignedInt(m_tmp4B) - 8;
-        m_stream.read(tmp8B);
+        bankNumber = _read2BAsUInt();
+        isChipMemory = (_read2BAsUInt()==0);
+        int sizeAndFlags = _read4BAsInt();
+        flags = 0x0f & (sizeAndFlags >>> 28);
+        bankSize = (0x0fffffff & sizeAndFlags) - 8;
+        m_source.readFully(tmp8B, 0, tmp8B.length);
         bankName = new String(tmp8B);
         if (m_isVerbose) {
             System.err.println(" Bank "+bankNumber+": "+bankName+(isChipMemory?" (chip) ":" ")+bankSize+" bytes");
         }
         AMOSBankType bankType = AMOSBankType.GetAMOSBankTypeById(bankName);
-        if (bankType==AMOSBankType.UNKNOWN) {
-            System.err.println("Unknown memory bank: "+bankName);
+        if (bankType==AMOSBankType.UNKNOWN && m_isVerbose) {
+            // not an error: its data is still saved as it is
+            System.err.println(" ... no decoder for "+bankName.trim()+", saving its data");
         }
         m_currentBankSize = bankSize ;
         m_currentBankNumber = bankNumber;
+        m_currentBankName = bankName;
+        m_isCurrentBankChip = isChipMemory;
+        m_currentBankFlags = flags;
         return bankType;
     }
     
@@ -240,62 +302,243 @@ public class AMOSFileInputStream
     {
         if (m_currentBankSize > 0) {
             byte[] data = new byte[m_currentBankSize];
-            m_stream.read(data);
+            m_source.readFully(data, 0, data.length);
             m_currentBankSize = 0;
             return data;
         }
         return null;
     }
     
+    /**
+     * Returns the data of the current memory bank, without copying it if possible
+     */
+    public java.nio.ByteBuffer readMemoryBankBuffer() throws java.io.IOException
+    {
+        java.nio.ByteBuffer data = m_source.readBuffer(m_currentBankSize);
+        m_currentBankSize = 0;
+        return data;
+    }
+    
+    /**
+     * Reads the directory of a Samples bank. The data of the samples
+     * is read as they are written, without copying the bank.
+     */
+    public SampleBank readSampleBank() throws java.io.IOException, java.io.StreamCorruptedException
+    {
+        return decodeSampleBank(readMemoryBankBuffer());
+    }
+    
+    /**
+     * Reads the directory of a Samples bank
+     * @param data data of the bank, as returned by readMemoryBankBuffer()
+     */
+    public SampleBank decodeSampleBank(java.nio.ByteBuffer data) throws java.io.StreamCorruptedException
+    {
+        SampleBank bank = SampleBank.decode(data);
+        if (m_isVerbose) {
+            System.err.println("... reading "+bank.size()+" samples");
+        }
+        return bank;
+    }
+    
+    /**
+     * Reads the module of a Tracker bank. It isn't copied until it's written.
+     */
+    public TrackerModule readTrackerModule() throws java.io.IOException, java.io.StreamCorruptedException
+    {
+        return decodeTrackerModule(readMemoryBankBuffer());
+    }
+    
+    /**
+     * Checks the module of a Tracker bank
+     * @param data data of the bank, as returned by readMemoryBankBuffer()
+     */
+    public TrackerModule decodeTrackerModule(java.nio.ByteBuffer data) throws java.io.StreamCorruptedException
+    {
+        TrackerModule module = new TrackerModule(data);
+        if (m_isVerbose) {
+            System.err.println("... module "+module);
+        }
+        return module;
+    }
+    
+    /**
+     * Reads the tables of a Music bank
+     * @param data data of the bank, as returned by readMemoryBankBuffer()
+     */
+    public MusicBank decodeMusicBank(java.nio.ByteBuffer data) throws java.io.StreamCorruptedException
+    {
+        MusicBank bank = new MusicBank(data);
+        if (m_isVerbose) {
+            System.err.println("... music "+bank);
+        }
+        return bank;
+    }
+    
+    /**
+     * Writes the current memory bank as an AMOS bank file (.abk), which AMOS can load.
+     * The data is written straight from the file, a few KB at a time.
+     * @param data data of the bank, as returned by readMemoryBankBuffer()
+     */
+    public void writeBankFile(java.nio.ByteBuffer data, File file) throws java.io.IOException
+    {
+        java.nio.ByteBuffer header = java.nio.ByteBuffer.allocate(20);
+        header.put(new byte[] {'A','m','B','k'});
+        header.putShort((short)m_currentBankNumber);
+        header.putShort((short)(m_isCurrentBankChip ? 0 : 1));
+        header.putInt((m_currentBankFlags << 28) | (data.remaining() + 8));
+        header.put(java.util.Arrays.copyOf(m_currentBankName.getBytes(java.nio.charset.StandardCharsets.ISO_8859_1), 8));
+        header.flip();
+        java.nio.channels.FileChannel channel = _create(file);
+        try {
+            _write(channel, header);
+            _write(channel, data.duplicate());
+        } finally {
+            channel.close();
+        }
+    }
+    
+    /**
+     * Writes the data of the current memory bank as it is, and a text file
+     * with its header: number, memory, flags and size.
+     * The data is copied a few KB at a time, so banks of any size can be written.
+     * @param headerFile null to only write the data
+     */
+    public void writeMemoryBank(File dataFile, File headerFile) throws java.io.IOException
+    {
+        long size = m_currentBankSize;
+        java.nio.channels.FileChannel channel = _create(dataFile);
+        try {
+            while (m_currentBankSize > 0) {
+                // a view of the file if it's mapped, a small copy otherwise
+                java.nio.ByteBuffer data = m_source.readBuffer(Math.min(m_currentBankSize, COPY_SIZE));
+                m_currentBankSize -= data.remaining();
+                _write(channel, data);
+            }
+        } finally {
+            channel.close();
+        }
+        if (headerFile == null) {
+            return;
+        }
+        java.io.PrintWriter header = new java.io.PrintWriter(new java.io.FileWriter(headerFile));
+        try {
+            header.println("number="+m_currentBankNumber);
+            header.println("name="+m_currentBankName.trim());
+            header.println("memory="+(m_isCurrentBankChip ? "chip" : "fast"));
+            header.println("flags="+m_currentBankFlags);
+            header.println("size="+size);
+        } finally {
+            header.close();
+        }
+        if (header.checkError()) {
+            throw( new java.io.IOException("Can't write "+headerFile) );
+        }
+    }
+    
+    /**
+     * Name of the current memory bank, e.g. "Datas   "
+     */
+    public String getCurrentBankName()
+    {
+        return m_currentBankName;
+    }
+    
     /**
      * Reads a Packed Picture (Pac.Pic.)
+     * The screen header is optional. Without it, a gray palette is used.
      * @see http://www.exotica.org.uk/wiki/AMOS_Pac.Pic._format
      */
-    public BufferedImage readPacPic() throws java.io.IOException
+    public BufferedImage readPacPic() throws java.io.IOException, java.io.StreamCorruptedException
     {
+        return decodePacPic(readMemoryBankBuffer());
+    }
+    
+    /**
+     * Decodes a Packed Picture from the data of its memory bank, as returned by readMemoryBankBuffer()
+     */
+    public BufferedImage decodePacPic(java.nio.ByteBuffer bank) throws java.io.IOException, java.io.StreamCorruptedException
+    {
+        ByteBufferSource source = new ByteBufferSource(bank);
         int width, height, numColors, numBitplanes;
-        // Screen header
-        // --------------------------------------------
-        m_stream.read(m_tmp4B); // fixed ID
-        width = _read2BAsUInt(); // width in pixels
-        height = _read2BAsUInt(); // height in pixels
-        m_stream.read(m_tmp2B); // hardware top-left X
-        m_stream.read(m_tmp2B); // hardware top-left Y
-        m_stream.read(m_tmp2B); // hardware screen width
-        m_stream.read(m_tmp2B); // hardware screen height
-        m_stream.read(m_tmp2B); // unknown
-        m_stream.read(m_tmp2B); // unknown
-        // Value of the Amiga BPLCON0 register, which details the hardware screen mode such as HAM, hires or interlaced
-        m_stream.read(m_tmp2B);
-        // Number of colours on screen. 
-        numColors = _read2BAsUInt(); // 2, 4, 8, 16, 32, 64 (EHB) or 4096 (HAM)
-        numBitplanes = _read2BAsUInt(); // 1..6
-        // 32 2-byte palette entries in the Amiga COLORxx register format.
-        byte[] paletteData = new byte[64];
-        m_stream.read(paletteData);
+        boolean isHam = false;
+        int headerBytes = 0;
+        IndexColorModel palette = null;
+        int id = source.readInt(); // fixed ID
+        headerBytes += 4;
+        if (id == PACPIC_SCREEN_ID) {
+            // Screen header
+            // --------------------------------------------
+            width = source.readUnsignedWord(); // width in pixels
+            height = source.readUnsignedWord(); // height in pixels
+            source.readUnsignedWord(); // hardware top-left X
+            source.readUnsignedWord(); // hardware top-left Y
+            source.readUnsignedWord(); // hardware screen width
+            source.readUnsignedWord(); // hardware screen height
+            source.readUnsignedWord(); // unknown
+            source.readUnsignedWord(); // unknown
+            // Value of the Amiga BPLCON0 register, which details the hardware screen mode such as HAM, hires or interlaced
+            int bplcon0 = source.readUnsignedWord();
+            // Number of colours on screen. 
+            numColors = source.readUnsignedWord(); // 2, 4, 8, 16, 32, 64 (EHB) or 4096 (HAM)
+            isHam = (bplcon0 & BPLCON0_HAM) != 0 || numColors == 4096;
+            numBitplanes = source.readUnsignedWord(); // 1..6
+            // 32 2-byte palette entries in the Amiga COLORxx register format.
+            byte[] paletteData = new byte[64];
+            source.readFully(paletteData, 0, paletteData.length);
+            palette = PlanarImage.decodeColorPalette(paletteData);
+            id = source.readInt(); // fixed ID
+            headerBytes += 90;
+        }
+        if (id != PACPIC_PICTURE_ID) {
+            throw( new java.io.StreamCorruptedException("Wrong Pac.Pic. header: 0x"+Integer.toHexString(id)) );
+        }
         // Picture header
         // --------------------------------------------
-        _read4BAsInt(); // fixed ID
-        _read2BAsUInt(); // X coordinate offset in bytes of the picture within the screen itself.
-        _read2BAsUInt(); // Y coordinate offset in lines (vertical pixels) of the picture within the screen itself.
-        _read2BAsUInt(); // picture width in bytes.
-        _read2BAsUInt(); // picture height in "line lumps"
-        _read2BAsUInt(); // number of lines in a "line lump"
-        _read2BAsUInt(); // number of bitplanes in the picture
-        _read4BAsUInt(); // offset to the RLEDATA stream, relative to the picture header ID's offset.
-        _read4BAsUInt(); // offset to the POINTS stream, relative to the picture header ID's offset.
-        
-        // @todo Decompress picture data
-        // ---------------------------------------------
-        m_currentBankSize -= 114; // headers
-        byte[] data = readMemoryBankRaw();
+        source.readUnsignedWord(); // X coordinate offset in bytes of the picture within the screen itself.
+        source.readUnsignedWord(); // Y coordinate offset in lines (vertical pixels) of the picture within the screen itself.
+        int widthBytes = source.readUnsignedWord(); // picture width in bytes.
+        int heightLumps = source.readUnsignedWord(); // picture height in "line lumps"
+        int lumpHeight = source.readUnsignedWord(); // number of lines in a "line lump"
+        numBitplanes = source.readUnsignedWord(); // number of bitplanes in the picture
+        long rleOffset = 0xFFFFFFFFL & source.readInt(); // offset to the RLEDATA stream, relative to the picture header ID's offset.
+        long pointsOffset = 0xFFFFFFFFL & source.readInt(); // offset to the POINTS stream, relative to the picture header ID's offset.
+        headerBytes += 20;
+        if (numBitplanes<1 || numBitplanes>6) {
+            throw( new java.io.StreamCorruptedException("Incompatible Pac.Pic. depth("+numBitplanes+")!") );
+        }
         
-        // Create PlanarImage
+        // Decompress picture data
         // ---------------------------------------------
-        IndexColorModel palette = PlanarImage.decodeColorPalette(paletteData);
-        PlanarImage img = new PlanarImage(1,1,1,data,palette);
-
-        return img.GetAsBufferedImage();
+        // the streams are read in place, without copying the bank
+        int dataSize = (int)source.size() - headerBytes;
+        java.nio.ByteBuffer data = source.readBuffer(dataSize);
+        int pictureHeaderSize = 24;
+        if (rleOffset < pictureHeaderSize || rleOffset - pictureHeaderSize >= dataSize
+            || pointsOffset < pictureHeaderSize || pointsOffset - pictureHeaderSize >= dataSize) {
+            throw( new java.io.StreamCorruptedException("Wrong Pac.Pic. stream offsets") );
+        }
+        if (m_isVerbose) {
+            System.err.println("... unpacking "+(8*widthBytes)+"x"+(heightLumps*lumpHeight)+"x"+numBitplanes+" picture");
+        }
+        if (palette == null) {
+            palette = PlanarImage.createGrayGradientPalette();
+        }
+        // with 6 bitplanes, it's either HAM or Extra-Half-Brite
+        IndexColorModel colorModel = palette;
+        if (numBitplanes > 5) {
+            colorModel = PlanarImage.createExtraHalfBritePalette(palette);
+        }
+        PacPicDecoder decoder = new PacPicDecoder(widthBytes, heightLumps, lumpHeight, numBitplanes);
+        BufferedImage img = decoder.decode(data, 0, (int)(rleOffset - pictureHeaderSize),
+            (int)(pointsOffset - pictureHeaderSize), colorModel);
+        if (isHam) {
+            if (m_isVerbose) {
+                System.err.println("... converting HAM picture");
+            }
+            img = PlanarImage.hamToRGB(img, palette);
+        }
+        return img;
     }
     
     /**
@@ -303,283 +546,50 @@ public class AMOSFileInputStream
      */
     public String readLine() throws java.io.IOException, java.io.StreamCorruptedException
     {
-        String line = "";
-        m_stream.read(m_tmp1B); // unsigned byte
-        int lineLength = readUnsignedByte(m_tmp1B) ; // in words (2 bytes)
-        m_readBytes += lineLength * 2 ; // in bytes
-        
-        m_stream.read(m_tmp1B);
-        int indentLevel = readUnsignedByte(m_tmp1B) ;
-        for (int i=1; i<indentLevel; ++i) line = line + " ";
-        
-        int tokenID = 0 ;
-        //System.out.println("line l: "+lineLength+" indent: "+indentLevel);
-
-        
-        // big parsing loop
-        int readWords = 1 ;
-        while (readWords<lineLength) {
-            m_stream.read(m_tmp2B);
-            ++readWords ;
-            tokenID = readUnsignedWord(m_tmp2B);
-            switch(tokenID) {
-                case 0: // NULL token
-                    break ;
-                // Specially printed tokens
-                // -------------------------------------------
-                case 0x0006: // Variable reference
-                {
-                    m_stream.read(m_tmp2B); // unknown purpose 
-                    int strlength = _read1BAsUInt(); // string size
-                    if ( (strlength%2)==1 ) strlength += 1; // round up to words
-                    m_stream.read(m_tmp1B); // flag
-                    int flag = readUnsignedByte(m_tmp1B);
-                    byte[] str = new byte[strlength];
-                    m_stream.read(str);
-                    readWords += 2 + (strlength>>1);
-                    line = line + (new String(str)) ;
-                    if ( (flag&0x01)!=0 ) {
-                        line = line + "#" ; // float reference
-                    } else if ( (flag&0x02)!=0 ) {
-                        line = line + "$" ; // string reference
-                    }
-                    //m_tmp2B[0] = str[strlength-2];
-                    //m_tmp2B[1] = str[strlength-1];
-                    //tokenID = readUnsignedWord(m_tmp2B);
-                    break;
-                }
-                case 0x000C: // Label
-                {
-                    m_stream.read(m_tmp2B); // unknown purpose 
-                    int strlength = _read1BAsUInt(); // string size
-                    if ( (strlength%2)==1 ) strlength += 1; // round up to words
-                    m_stream.read(m_tmp1B); // flag
-                    int flag = readUnsignedByte(m_tmp1B);
-                    byte[] str = new byte[strlength];
-                    m_stream.read(str);
-                    readWords += 2 + (strlength>>1);
-                    line = line + (new String(str)) +":" ;
-                    break;
-                }
-                case 0x0012: // Procedure call reference
-                {
-                    m_stream.read(m_tmp2B); // unknown purpose 
-                    int strlength = _read1BAsUInt(); // string size
-                    if ( (strlength%2)==1 ) strlength += 1; // round up to words
-                    m_stream.read(m_tmp1B); // flag
-                    int flag = readUnsignedByte(m_tmp1B);
-                    byte[] str = new byte[strlength];
-                    m_stream.read(str);
-                    readWords += 2 + (strlength>>1);
-                    line = line + (new String(str)) ;
-                    if ( (flag&0x01)!=0 ) {
-                        line = line + "#" ; // float reference
-                    } else if ( (flag&0x02)!=0 ) {
-                        line = line + "$" ; // string reference
-                    }
-                    break;
-                }
-                case 0x0018: // Label reference
-                {
-                    m_stream.read(m_tmp2B); // unknown purpose 
-                    int strlength = _read1BAsUInt(); // string size
-                    if ( (strlength%2)==1 ) strlength += 1; // round up to words
-                    m_stream.read(m_tmp1B); // flag
-                    int flag = readUnsignedByte(m_tmp1B);
-                    byte[] str = new byte[strlength];
-                    m_stream.read(str);
-                    readWords += 2 + (strlength>>1);
-                    line = line + (new String(str)) ;
-                    if ( (flag&0x01)!=0 ) {
-                        line = line + "#" ; // float reference
-                    } else if ( (flag&0x02)!=0 ) {
-                        line = line + "$" ; // string reference
-                    }
-                    break;
-                }
-                case 0x0026: // String with double quotes
-                {
-                    // length of the string 
-                    int strlength = _read2BAsUInt();
-                    if ( (strlength%2)==1 ) strlength += 1; // round up to words
-                    byte[] str = new byte[strlength];
-                    m_stream.read(str);
-                    readWords += 1 + (strlength>>1);
-                    line = line + "\""+(new String(str))+"\"" ;
-                    break;
-                }
-                case 0x002E: // String with single quotes
-                {
-                    // length of the string 
-                    int strlength = _read2BAsUInt();
-                    if ( (strlength%2)==1 ) strlength += 1; // round up to words
-                    byte[] str = new byte[strlength];
-                    m_stream.read(str);
-                    readWords += 1 + (strlength>>1);
-                    line = line + "\'"+(new String(str))+"\'" ;
-                    break;
-                }
-                case 0x001E: // Binary integer value
-                {
-                    int value = _read4BAsInt();
-                    readWords += 2;
-                    line = line + "%"+Integer.toBinaryString(value) ;
-                    break;
-                }
-                case 0x0036: // Hexadecimal integer value
-                {
-                    int value = _read4BAsInt();
-                    readWords += 2;
-                    line = line + "$"+Integer.toHexString(value) ;
-                    break;
-                }
-                case 0x003E: // Decimal integer value
-                {
-                    int value = _read4BAsInt();
-                    readWords += 2;
-                    line = line +Integer.toString(value) ;
-                    break;
-                }
-                case 0x0046: // Float value
-                {
-                    float value = _read4BAsFloat();
-                    readWords += 2;
-                    line = line + Float.toString(value) ;
-                    break;
-                }
-                case 0x004E: // Extension command
-                {
-                    int extNumber = _read1BAsUInt();
-                    m_stream.read(m_tmp1B); // unused
-                    // signed 16-bit offset into extension's token table
-                    int offset = _read2BAsInt();
-                    readWords += 2;
-                    String tokenStr = m_extensions.get((extNumber<<16)|offset);
-                    if ( tokenStr != null ) {
-                        line = line + tokenStr ;
-                    } else {
-                        line = line +"[ext"+extNumber+"(0x"+Integer.toHexString(offset)+")] " ;
-                    }
-                    break;
-                }                    
-                // Specially sized tokens
-                // -------------------------------------------
-                case 0x023C: // FOR
-                {
-                    line = line + "For ";
-                    m_stream.read(m_tmp2B); // unknown purpose
-                    readWords += 1;
-                    break;
-                }
-                case 0x0250: // REPEAT
-                {
-                    line = line + "Repeat";
-                    m_stream.read(m_tmp2B); // unknown purpose
-                    readWords += 1;
-                    break;
-                }
-                case 0x0268: // WHILE
-                {
-                    line = line + "While ";
-                    m_stream.read(m_tmp2B); // unknown purpose
-                    readWords += 1;
-                    break;
-                }
-                case 0x027E: // DO
-                {
-                    line = line + "Do ";
-                    m_stream.read(m_tmp2B); // unknown purpose
-                    readWords += 1;
-                    break;
-                }
-                case 0x02BE: // IF
-                {
-                    line = line + "If ";
-                    m_stream.read(m_tmp2B); // unknown purpose
-                    readWords += 1;
-                    break;
-                }
-                case 0x02D0: // ELSE
-                {
-                    line = line + "Else ";
-                    m_stream.read(m_tmp2B); // unknown purpose
-                    readWords += 1;
-                    break;
-                }
-                case 0x0404: // DATA
-                {
-                    line = line + "Data ";
-                    m_stream.read(m_tmp2B); // unknown purpose
-                    readWords += 1;
-                    break;
-                }
-                case 0x0290: // EXIT IF
-                {
-                    line = line + "Exit If ";
-                    m_stream.read(m_tmp4B); // unknown purpose
-                    readWords += 2;
-                    break;
-                }
-                case 0x029E: // EXIT
-                {
-                    line = line + "Exit ";
-                    m_stream.read(m_tmp4B); // unknown purpose
-                    readWords += 2;
-                    break;
-                }
-                case 0x0316: // ON
-                {
-                    line = line + "On ";
-                    m_stream.read(m_tmp4B); // unknown purpose
-                    readWords += 2;
-                    break;
-                }                    
-                case 0x0376: // PROCEDURE
-                {
-                    line = line + "Procedure ";
-                    m_stream.read(m_tmp4B); // number of bytes to corresponding End Proc line
-                    m_stream.read(m_tmp2B); // part of seed for encryption
-                    m_stream.read(m_tmp1B); // flags
-                    m_stream.read(m_tmp1B); // part of seed for encryption
-                    readWords += 4;
-                    break;
-                }                    
-                case 0x064A: // REM
-                case 0x0652: // REM type 2
-                {
-                    line = line + m_tokenMap.get(tokenID);
-                    m_stream.read(m_tmp1B); // unused 
-                    m_stream.read(m_tmp1B); // string size 
-                    int strlength = readUnsignedByte(m_tmp1B);
-                    if ( (strlength%2)==1 ) strlength += 1; // round up to words
-                    byte[] str = new byte[strlength];
-                    m_stream.read(str);
-                    readWords += 1 + (strlength>>1);
-                    line = line + (new String(str)) ;
-                    break;
-                }
-                default:
-                {
-                    String tokenStr = m_tokenMap.get(tokenID);
-                    if ( tokenStr != null ) {
-                        line = line + tokenStr ;
-                    } else {
-                        line = line + ("[0x" + Integer.toHexString(tokenID)+"]");                    
-                    }
-                }
-            }
+        m_tokens.parseLine(m_printer);
+        return m_printer.toString();
+    }
+    
+    /**
+     * Reads tokens from a line of AMOS BASIC code, and appends the line to out.
+     * The line is built in a buffer that is reused for every line.
+     */
+    public void readLine(Appendable out) throws java.io.IOException, java.io.StreamCorruptedException
+    {
+        m_tokens.parseLine(m_printer);
+        if (out instanceof java.io.Writer) {
+            m_printer.writeLine((java.io.Writer)out);
+        } else {
+            out.append(m_printer.getLine());
         }
-        
-        // last token is supposed to be null
-        if ( tokenID != 0 ) {
-            throw( new java.io.StreamCorruptedException("Line didn't end with a NULL token, but 0x"+Integer.toHexString(tokenID)+" ("+line+")") );
+    }
+    
+    /**
+     * Reads the tokens of a line of AMOS BASIC code, and pushes them to the handler
+     */
+    public void readLine(AMOSTokenHandler handler) throws java.io.IOException, java.io.StreamCorruptedException
+    {
+        m_tokens.parseLine(handler);
+    }
+    
+    /**
+     * Decodes all the remaining source code into out, one line per text line.
+     * On an error, the lines before it are still flushed.
+     */
+    public void decodeSource(java.io.Writer out) throws java.io.IOException, java.io.StreamCorruptedException
+    {
+        try {
+            while (!isSourceCodeEnd()) {
+                m_tokens.parseLine(m_printer);
+                m_printer.writeLine(out);
+                out.write(LINE_SEPARATOR);
+            }
+        } catch (java.io.StreamCorruptedException exc) {
+            throw( m_printer.lineError(exc) );
+        } finally {
+            out.flush();
         }
-
-        // stop at the first line just for testing
-        //m_readBytes = m_sourceSizeBytes ;
-
-        return line;
-    } // end readLine()
+    }
     
     
     public boolean isValidHeader(String header)
@@ -597,29 +607,41 @@ public class AMOSFileInputStream
     
     // functions to read values from current stream
     // -------------------------------------------------------
-    private float _read4BAsFloat() throws java.io.IOException {
-        m_stream.read(m_tmp4B);
-        return readFloat(m_tmp4B);
-    }
     private int _read4BAsInt() throws java.io.IOException {
-        m_stream.read(m_tmp4B);
-        return readSignedInt(m_tmp4B);
+        return m_source.readInt();
     }
     private long _read4BAsUInt() throws java.io.IOException {
-        m_stream.read(m_tmp4B);
-        return readUnsignedInt(m_tmp4B);
+        return 0xFFFFFFFFL & (long)m_source.readInt();
     }
-    private int _read2BAsInt() throws java.io.IOException {
-        m_stream.read(m_tmp2B);
-        return readSignedWord(m_tmp2B);
+    private String _read4BAsString() throws java.io.IOException {
+        m_source.readFully(m_tmp4B, 0, 4);
+        return new String(m_tmp4B);
     }
     private int _read2BAsUInt() throws java.io.IOException {
-        m_stream.read(m_tmp2B);
-        return readUnsignedWord(m_tmp2B);
+        return m_source.readUnsignedWord();
     }
     private int _read1BAsUInt() throws java.io.IOException {
-        m_stream.read(m_tmp1B);
-        return readUnsignedByte(m_tmp1B);
+        return m_source.readUnsignedByte();
+    }
+    
+    // functions to write bank data to files
+    // -------------------------------------------------------
+    private static java.nio.channels.FileChannel _create(File file) throws java.io.IOException {
+        return java.nio.channels.FileChannel.open(file.toPath(),
+            java.nio.file.StandardOpenOption.CREATE, java.nio.file.StandardOpenOption.WRITE,
+            java.nio.file.StandardOpenOption.TRUNCATE_EXISTING);
+    }
+    /**
+     * Writes the remaining bytes of data, COPY_SIZE bytes at a time
+     */
+    private static void _write(java.nio.channels.FileChannel channel, java.nio.ByteBuffer data) throws java.io.IOException {
+        int end = data.limit();
+        while (data.position() < end) {
+            data.limit(Math.min(data.position() + COPY_SIZE, end));
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        }
     }
     
     /**
@@ -630,12 +652,16 @@ public class AMOSFileInputStream
      */
     public static float readFloat(byte[] bigEndian)
     {
-        int mantissa =
-            ((0x000000ff & (int)bigEndian[0]) << 16) |
-            ((0x000000ff & (int)bigEndian[1]) << 8) |
-            ((0x000000ff & (int)bigEndian[2])) ;
-        int exponent = (int)(0x7f & bigEndian[3]) - 0x040 ;
-        int sign = 0x01 & (int)(bigEndian[3]>>7) ;
+        return readFloat(readSignedInt(bigEndian));
+    }
+    /**
+     * Same as readFloat(byte[]), from the 4 bytes read as a big-endian int
+     */
+    public static float readFloat(int bits)
+    {
+        int mantissa = bits >>> 8 ;
+        int exponent = (0x7f & bits) - 0x040 ;
+        int sign = 0x01 & (bits >> 7) ;
         float f = ((float)mantissa/(float)0x01000000) 
             * (float)Math.pow(2.0, (double)exponent);
         //System.err.println("mantissa: "+mantissa+", exp: "+exponent);
@@ -677,317 +703,4 @@ public class AMOSFileInputStream
         return value ;
     }
     
-    private void _initTokenMap()
-    {
-        m_tokenMap.put(0x0054," : ");
-        m_tokenMap.put(0x005C,",");
-        m_tokenMap.put(0x0064,";"); 
-        m_tokenMap.put(0x0074,"("); 
-        m_tokenMap.put(0x007c,")"); 
-        m_tokenMap.put(0x0084,"["); 
-        m_tokenMap.put(0x008c,"]");
-        m_tokenMap.put(0x0094," To ");  
-        m_tokenMap.put(0x009c,"Not ");
-        m_tokenMap.put(0x00f2,"Inkey$");  
-        m_tokenMap.put(0x012c,"Double Buffer"); 
-        m_tokenMap.put(0x0140,"Start"); 
-        m_tokenMap.put(0x015a,"Doke ");
-        m_tokenMap.put(0x0246,"Next "); 
-        m_tokenMap.put(0x025c,"Until "); 
-        m_tokenMap.put(0x0274,"Wend"); 
-        m_tokenMap.put(0x0286,"Loop"); 
-        m_tokenMap.put(0x02c6," Then "); 
-        m_tokenMap.put(0x02a8,"Goto "); 
-        m_tokenMap.put(0x02b2,"Gosub "); 
-        m_tokenMap.put(0x02da,"End If"); 
-        m_tokenMap.put(0x02e6,"On Error ");
-        m_tokenMap.put(0x031e,"Resume Label ");
-        m_tokenMap.put(0x0330,"Resume");
-        m_tokenMap.put(0x033c,"Pop Proc");
-        m_tokenMap.put(0x0356," Step "); 
-        m_tokenMap.put(0x0360,"Return"); 
-        m_tokenMap.put(0x0386,"Proc ");
-        m_tokenMap.put(0x0390,"End Proc "); 
-        m_tokenMap.put(0x03aa,"Global "); 
-        m_tokenMap.put(0x03b6,"End "); 
-        m_tokenMap.put(0x03e2,"Param");
-        m_tokenMap.put(0x040e,"Read "); 
-        m_tokenMap.put(0x0418,"Restore "); 
-        m_tokenMap.put(0x0426,"Break Off "); 
-        m_tokenMap.put(0x0444,"Inc "); 
-        m_tokenMap.put(0x044e,"Dec "); 
-        m_tokenMap.put(0x0458,"Add "); 
-        m_tokenMap.put(0x0462,"Add ");
-        m_tokenMap.put(0x0476,"Print ");
-        m_tokenMap.put(0x049c,"Input$");
-        m_tokenMap.put(0x04d0,"Input ");
-        m_tokenMap.put(0x050e,"Mid$");
-        m_tokenMap.put(0x0528,"Left$");
-        m_tokenMap.put(0x0536,"Right$");
-        m_tokenMap.put(0x0552,"Chr$");
-        m_tokenMap.put(0x057c,"Upper$");
-        m_tokenMap.put(0x0598,"Str$");
-        m_tokenMap.put(0x05a4,"Val");
-        m_tokenMap.put(0x05da,"Len");
-        m_tokenMap.put(0x05e4,"Instr");
-        m_tokenMap.put(0x0640,"Dim ");
-        m_tokenMap.put(0x064A,"REM "); // REM
-        m_tokenMap.put(0x0652,"\'"); // REM2
-        m_tokenMap.put(0x0686,"Rnd");
-        m_tokenMap.put(0x0670,"Edit");
-        m_tokenMap.put(0x06a0,"Sgn");
-        m_tokenMap.put(0x06aa,"Abs");
-        m_tokenMap.put(0x06b4,"Int");
-        m_tokenMap.put(0x06d6,"Pi#");
-        m_tokenMap.put(0x0702,"Sin");
-        m_tokenMap.put(0x070c,"Cos");
-        m_tokenMap.put(0x0768,"Sqr");
-        m_tokenMap.put(0x09ea,"Screen Open ");
-        m_tokenMap.put(0x0a04,"Screen Close "); 
-        m_tokenMap.put(0x0a18,"Screen Display "); 
-        m_tokenMap.put(0x0a36,"Screen Offset ");
-        m_tokenMap.put(0x0a88,"Screen To Front ");
-        m_tokenMap.put(0x0a90,"Screen To Back ");
-        m_tokenMap.put(0x0aa6,"Screen To Back ");
-        m_tokenMap.put(0x0aae,"Screen Hide");
-        m_tokenMap.put(0x0ac0,"Screen Hide ");
-        m_tokenMap.put(0x0ac8,"Screen Show");
-        m_tokenMap.put(0x0ada,"Screen Show ");
-        m_tokenMap.put(0x0b16,"View"); 
-        m_tokenMap.put(0x0b34,"Auto View On ");
-        m_tokenMap.put(0x0b90,"Get Palette ");
-        m_tokenMap.put(0x0bb8,"Cls "); 
-        m_tokenMap.put(0x0bee,"X Hard");
-        m_tokenMap.put(0x0c06,"Y Hard");
-        m_tokenMap.put(0x0c1e,"X Screen");
-        m_tokenMap.put(0x0c38,"Y Screen");
-        m_tokenMap.put(0x0c6e,"Screen ");
-        m_tokenMap.put(0x0c7c,"Screen");
-        m_tokenMap.put(0x0c84,"Hires");
-        m_tokenMap.put(0x0c90,"Lowres");
-        m_tokenMap.put(0x0cca,"Wait Vbl");
-        m_tokenMap.put(0x0cfc,"Palette ");
-        m_tokenMap.put(0x0d1c,"Colour "); 
-        m_tokenMap.put(0x0d2c,"Colour");
-        m_tokenMap.put(0x0d34,"Flash Off"); 
-        m_tokenMap.put(0x0d44,"Flash ");
-        m_tokenMap.put(0x0d52,"Shift Off");
-        m_tokenMap.put(0x0d62,"Shift Up ");
-        m_tokenMap.put(0x0d78,"Shift Down ");
-        m_tokenMap.put(0x0d90,"Set Rainbow ");
-        m_tokenMap.put(0x0dd4,"Rainbow Del "); 
-        m_tokenMap.put(0x0ddc,"Rainbow "); 
-        m_tokenMap.put(0x0df0,"Rain"); 
-        m_tokenMap.put(0x0dfe,"Fade ");
-        m_tokenMap.put(0x0e2c,"Autoback ");
-        m_tokenMap.put(0x0e3c,"Plot ");
-        m_tokenMap.put(0x0e56,"Point");
-        m_tokenMap.put(0x0e74,"Draw ");
-        m_tokenMap.put(0x0eac,"Polyline ");
-        m_tokenMap.put(0x0ec8,"Bar "); 
-        m_tokenMap.put(0x0ed8,"Box "); 
-        m_tokenMap.put(0x0f16,"Text Length");
-        m_tokenMap.put(0x0f3a,"Text Base");
-        m_tokenMap.put(0x0fc2,"Font$");
-        m_tokenMap.put(0x1044,"Ink "); 
-        m_tokenMap.put(0x1050,"Ink "); 
-        m_tokenMap.put(0x1066,"Gr Writing "); 
-        m_tokenMap.put(0x1078,"Clip");
-        m_tokenMap.put(0x1084,"Clip ");
-        m_tokenMap.put(0x1146,"Get Block "); 
-        m_tokenMap.put(0x1160,"Get Block ");
-        m_tokenMap.put(0x1172,"Put Block "); 
-        m_tokenMap.put(0x1184,"Put Block ");
-        m_tokenMap.put(0x11ae,"Del Block"); 
-        m_tokenMap.put(0x11d8,"Key State");
-        m_tokenMap.put(0x11f8,"Joy"); 
-        m_tokenMap.put(0x1aa8,"Bob Off"); 
-        m_tokenMap.put(0x1202,"Jup"); 
-        m_tokenMap.put(0x120c,"Jdown"); 
-        m_tokenMap.put(0x1218,"Jleft"); 
-        m_tokenMap.put(0x1224,"Jright"); 
-        m_tokenMap.put(0x1232,"Fire"); 
-        m_tokenMap.put(0x123e,"True"); 
-        m_tokenMap.put(0x1248,"False"); 
-        m_tokenMap.put(0x1262,"Scancode"); 
-        m_tokenMap.put(0x1280,"Clear Key"); 
-        m_tokenMap.put(0x1290,"Wait Key"); 
-        m_tokenMap.put(0x129e,"Wait "); 
-        m_tokenMap.put(0x12ce,"Timer"); 
-        m_tokenMap.put(0x12f4,"Wind Open "); 
-        m_tokenMap.put(0x131a,"Wind Close"); 
-        m_tokenMap.put(0x1351,"Window "); 
-        m_tokenMap.put(0x135e,"Window "); 
-        m_tokenMap.put(0x1378,"Locate "); 
-        m_tokenMap.put(0x1392,"Home"); 
-        m_tokenMap.put(0x13c6,"At");
-        m_tokenMap.put(0x13d2,"Pen "); 
-        m_tokenMap.put(0x13dc,"Paper "); 
-        m_tokenMap.put(0x13e8,"Centre "); 
-        m_tokenMap.put(0x1446,"Curs Off"); 
-        m_tokenMap.put(0x14b2,"Shade On"); 
-        m_tokenMap.put(0x1528,"Cdown"); 
-        m_tokenMap.put(0x1540,"Cright"); 
-        m_tokenMap.put(0x1646,"Reserve Zone ");
-        m_tokenMap.put(0x164e,"Reset Zone ");
-        m_tokenMap.put(0x1660,"Reset Zone "); 
-        m_tokenMap.put(0x1668,"Set Zone "); 
-        m_tokenMap.put(0x1680,"Zone");
-        m_tokenMap.put(0x16e2,"Mouse Zone"); 
-        m_tokenMap.put(0x174e,"Exist"); 
-        m_tokenMap.put(0x175A,"Dir$"); 
-        m_tokenMap.put(0x17d4,"Load Iff ");
-        m_tokenMap.put(0x17e4,"Load Iff ");
-        m_tokenMap.put(0x180c,"Bload "); 
-        m_tokenMap.put(0x181a,"Bsave ");
-        m_tokenMap.put(0x184e,"Load ");
-        m_tokenMap.put(0x185A,"Load ");
-        m_tokenMap.put(0x18bc,"Open In ");
-        m_tokenMap.put(0x190c,"Close ");
-        m_tokenMap.put(0x1986,"Set Sprite Buffer ");
-        m_tokenMap.put(0x199e,"Sprite Off ");
-        m_tokenMap.put(0x19b0,"Sprite Off ");
-        m_tokenMap.put(0x19e6,"Sprite Update On");
-        m_tokenMap.put(0x1a26,"Spritebob Col");
-        m_tokenMap.put(0x1a94,"Sprite ");
-        m_tokenMap.put(0x1ab6,"Bob Off ");
-        m_tokenMap.put(0x1abe,"Bob Update Off");
-        m_tokenMap.put(0x1ad2,"Bob Update On");
-        m_tokenMap.put(0x1ae6,"Bob Update");
-        m_tokenMap.put(0x1b14,"Bobsprite Col");
-        m_tokenMap.put(0x1b36,"Bob Col");
-        m_tokenMap.put(0x1b46,"Bob Col");
-        m_tokenMap.put(0x1b52,"Col");
-        m_tokenMap.put(0x1b7a,"Limit Bob ");
-        m_tokenMap.put(0x1b9e,"Bob ");
-        m_tokenMap.put(0x1bae,"Get Sprite Palette"); 
-        m_tokenMap.put(0x1bd0,"Get Sprite "); 
-        m_tokenMap.put(0x1bfc,"Get Bob ");
-        m_tokenMap.put(0x1c42,"Del Bob ");
-        m_tokenMap.put(0x1cfe,"Paste Bob "); 
-        m_tokenMap.put(0x1d12,"Paste Icon "); 
-        m_tokenMap.put(0x1d28,"Make Mask "); 
-        m_tokenMap.put(0x1d38,"Make Mask ");
-        m_tokenMap.put(0x1d4e,"No Mask ");
-        m_tokenMap.put(0x1d90,"Hot Spot ");
-        m_tokenMap.put(0x1dae,"Priority On");
-        m_tokenMap.put(0x1dc0,"Priority Off"); 
-        m_tokenMap.put(0x1dd2,"Hide On"); 
-        m_tokenMap.put(0x1de0,"Hide"); 
-        m_tokenMap.put(0x1dea,"Show On ");
-        m_tokenMap.put(0x1df8,"Show ");
-        m_tokenMap.put(0x1e02,"Change Mouse ");
-        m_tokenMap.put(0x1e16,"X Mouse"); 
-        m_tokenMap.put(0x1e24,"Y Mouse"); 
-        m_tokenMap.put(0x1e32,"Mouse Key"); 
-        m_tokenMap.put(0x1e42,"Mouse Click"); 
-        m_tokenMap.put(0x1e6e,"Limit Mouse ");
-        m_tokenMap.put(0x1f94,"Channel "); 
-        m_tokenMap.put(0x1fa2,"Amreg"); 
-        m_tokenMap.put(0x1fbc,"Amal On "); 
-        m_tokenMap.put(0x1fca,"Amal On "); 
-        m_tokenMap.put(0x1fd2,"Amal Off "); 
-        m_tokenMap.put(0x1fe2,"Amal Off "); 
-        m_tokenMap.put(0x1fea,"Amal Freeze "); 
-        m_tokenMap.put(0x1ffc,"Amal Freeze "); 
-        m_tokenMap.put(0x2012,"Amal "); 
-        m_tokenMap.put(0x20f2,"Reserve As Work "); 
-        m_tokenMap.put(0x215e,"Erase");
-        m_tokenMap.put(0x21ca,"Poke ");
-        m_tokenMap.put(0x21d8,"Loke ");
-        m_tokenMap.put(0x21e6,"Peek");
-        m_tokenMap.put(0x21f2,"Deek");
-        m_tokenMap.put(0x21fe,"Leek");
-        m_tokenMap.put(0x2416,"Priority Reverse Off");
-        m_tokenMap.put(0x2476,"Hrev");
-        m_tokenMap.put(0x24aa,"Amos To Front");
-        m_tokenMap.put(0x24e0,"Amos Lock"); 
-        m_tokenMap.put(0x26d8,"Erase All"); 
-        m_tokenMap.put(0x28a0,"Poke$ ");
-        m_tokenMap.put(0x28ae,"Peek$");
-        m_tokenMap.put(0x2952,"Assign "); 
-        m_tokenMap.put(0x2b3e,"Exec "); 
-        m_tokenMap.put(0x2bae,"Get Bob Palette"); 
-        m_tokenMap.put(0x3d6,"Param$"); 
-        m_tokenMap.put(0x4fe,"Set Buffer ");
-        m_tokenMap.put(0xae2,"Screen Swap");
-        m_tokenMap.put(0xb20,"Auto View Off");
-        m_tokenMap.put(0xdc2,"Rainbow Del");
-        m_tokenMap.put(0xf4a,"Text "); 
-        m_tokenMap.put(0xf7a,"Get Fonts"); 
-        m_tokenMap.put(0xfb2,"Set Font "); 
-        m_tokenMap.put(0xff4c," or "); 
-        m_tokenMap.put(0xff58," and ");
-        m_tokenMap.put(0xff66,"<>");
-        m_tokenMap.put(0xff7a,"<=");
-        m_tokenMap.put(0xff8e,">=");
-        m_tokenMap.put(0xff98,"=>");
-        m_tokenMap.put(0xffa2,"=");
-        m_tokenMap.put(0xffac,"<");
-        m_tokenMap.put(0xffb6,">");
-        m_tokenMap.put(0xffc0,"+");
-        m_tokenMap.put(0xffca,"-");
-        m_tokenMap.put(0xffd4," mod ");
-        m_tokenMap.put(0xffe2,"*");
-        m_tokenMap.put(0xffec,"/");
-        m_tokenMap.put(0xfff6,"^");
-
-        // extensions [ext_number,offset]
-        _initMusicTokenMap();
-        _initExtension3TokenMap();
-        _initExtension2TokenMap();
-        _initCraftTokenMap();
-    }
-    
-    /**
-     * Extension 1: Music
-     */
-    private void _initMusicTokenMap()
-    {
-        m_extensions.put(0x010012, "Vumeter");
-        m_extensions.put(0x01002c, "Music Off");
-        m_extensions.put(0x01003c, "Music Stop");
-        m_extensions.put(0x010058, "Music ");
-        m_extensions.put(0x010074, "Boom");
-        m_extensions.put(0x01008a, "Sam Bank");
-        m_extensions.put(0x0100b4, "Sam Loop Off");
-        m_extensions.put(0x0100ee, "Sam Play");
-        m_extensions.put(0x0100f8, "Sam Play ");
-        m_extensions.put(0x010144, "Play ");
-        m_extensions.put(0x010196, "Mvolume ");
-        m_extensions.put(0x0101ca, "Led On");
-        m_extensions.put(0x0101d6, "Led Off");
-        m_extensions.put(0x010246, "Sam Stop");
-        m_extensions.put(0x01025e, "Track Stop");
-        m_extensions.put(0x01026e, "Track Loop On");
-        m_extensions.put(0x010296, "Track Play");
-        m_extensions.put(0x0102ba, "Track Load");
-        m_extensions.put(0x0102a8, "Track Play");
-    }
-
-    /**
-     * Extension 2: ??
-     */
-    private void _initExtension2TokenMap()
-    {
-        m_extensions.put(0x020056, "Unpack ");
-    }
-
-    /**
-     * Extension 3: ??
-     */
-    private void _initExtension3TokenMap()
-    {
-        m_extensions.put(0x030028, "Request Wb");
-    }
-
-    /**
-     * Extensions 18, 19: Craft, MUSICraft
-     */
-    private void _initCraftTokenMap()
-    {
-        m_extensions.put(0x130028, "St Play ");   
-        m_extensions.put(0x130030, "St Stop"); 
-    }
-    
 }
@@ -0,0 +1,190 @@
+// Copyright (C) 2012 David Gavilan Ruiz
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package amos.io ;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Replays a program recorded by AMOSIRWriter to an AMOSTokenHandler.
+ * The texts of the pool are handed out from one shared buffer, without copies.
+ */
+public class AMOSIRReader
+{
+    ByteBuffer m_tokens ;
+    int[]   m_lineOffsets ;
+    byte[]  m_indents ;
+    int     m_numLines ;
+    byte[]  m_poolBytes ;
+    int[]   m_poolOffsets ;
+    int[]   m_poolLengths ;
+
+    /**
+     * Parses the header, the line table and the pool of a recorded program
+     * @param key the key the program must have been written with
+     * @throws amos.io.UnsupportedFormat if it's not a recorded program,
+     *   it was recorded by another version or with another key
+     */
+    public AMOSIRReader(ByteBuffer data, byte[] key)
+        throws amos.io.UnsupportedFormat, java.io.IOException
+    {
+        ByteBufferSource source = new ByteBufferSource(data);
+        if (source.readInt() != AMOSIRWriter.MAGIC) {
+            throw( new amos.io.UnsupportedFormat("Not an AMOS IR file") );
+        }
+        int version = source.readInt();
+        if (version != AMOSIRWriter.VERSION) {
+            throw( new amos.io.UnsupportedFormat("AMOS IR version "+version) );
+        }
+        byte[] fileKey = new byte[source.readUnsignedByte()];
+        source.readFully(fileKey, 0, fileKey.length);
+        if (!java.util.Arrays.equals(fileKey, key)) {
+            throw( new amos.io.UnsupportedFormat("AMOS IR of another file") );
+        }
+        m_numLines = source.readInt();
+        if (m_numLines < 0) {
+            throw( new java.io.StreamCorruptedException("Wrong number of lines: "+m_numLines) );
+        }
+        m_lineOffsets = new int[m_numLines];
+        for (int i = 0; i < m_numLines; ++i) {
+            m_lineOffsets[i] = source.readInt();
+        }
+        m_indents = new byte[m_numLines];
+        source.readFully(m_indents, 0, m_numLines);
+        // the texts are copied once into a single array
+        int poolSize = source.readInt();
+        long poolStart = source.position();
+        m_poolOffsets = new int[poolSize];
+        m_poolLengths = new int[poolSize];
+        int poolBytes = 0;
+        for (int i = 0; i < poolSize; ++i) {
+            int length = source.readUnsignedWord();
+            int paddedLength = (length + 1) & ~1;
+            m_poolOffsets[i] = poolBytes;
+            m_poolLengths[i] = length;
+            poolBytes += paddedLength;
+            source.skip(paddedLength);
+        }
+        source.seek(poolStart);
+        m_poolBytes = new byte[poolBytes];
+        for (int i = 0; i < poolSize; ++i) {
+            int length = source.readUnsignedWord();
+            source.readFully(m_poolBytes, m_poolOffsets[i], (length + 1) & ~1);
+        }
+        int tokensSize = source.readInt();
+        m_tokens = source.readBuffer(tokensSize);
+    }
+
+    public int getNumLines()
+    {
+        return m_numLines;
+    }
+
+    /**
+     * Replays all the lines
+     */
+    public void replay(AMOSTokenHandler handler) throws java.io.IOException, java.io.StreamCorruptedException
+    {
+        for (int i = 0; i < m_numLines; ++i) {
+            replayLine(i, handler);
+        }
+    }
+
+    /**
+     * Replays the events of one line
+     * @param line 0 for the first line
+     */
+    public void replayLine(int line, AMOSTokenHandler handler) throws java.io.IOException, java.io.StreamCorruptedException
+    {
+        ByteBuffer tokens = m_tokens;
+        int index = m_lineOffsets[line];
+        handler.startLine(0xff & m_indents[line]);
+        try {
+            while (true) {
+                int opcode = 0xff & tokens.get(index++);
+                switch(opcode) {
+                    case AMOSIRWriter.OP_END_LINE:
+                        handler.endLine();
+                        return;
+                    case AMOSIRWriter.OP_KEYWORD:
+                        handler.keyword(0xffff & tokens.getShort(index));
+                        index += 2;
+                        break;
+                    case AMOSIRWriter.OP_REFERENCE:
+                    {
+                        int tokenID = 0xffff & tokens.getShort(index);
+                        int flags = 0xff & tokens.get(index + 2);
+                        index += 3;
+                        int text = _text(index);
+                        index += _textSize(index);
+                        handler.reference(tokenID, flags, m_poolBytes, m_poolOffsets[text], m_poolLengths[text]);
+                        break;
+                    }
+                    case AMOSIRWriter.OP_LABEL:
+                    {
+                        int text = _text(index);
+                        index += _textSize(index);
+                        handler.label(m_poolBytes, m_poolOffsets[text], m_poolLengths[text]);
+                        break;
+                    }
+                    case AMOSIRWriter.OP_STRING:
+                    {
+                        char quote = (char)(0xff & tokens.get(index++));
+                        int text = _text(index);
+                        index += _textSize(index);
+                        handler.string(quote, m_poolBytes, m_poolOffsets[text], m_poolLengths[text]);
+                        break;
+                    }
+                    case AMOSIRWriter.OP_INTEGER:
+                        handler.integer(tokens.getInt(index + 1), 0xff & tokens.get(index));
+                        index += 5;
+                        break;
+                    case AMOSIRWriter.OP_FLOAT:
+                        handler.floatNumber(Float.intBitsToFloat(tokens.getInt(index)));
+                        index += 4;
+                        break;
+                    case AMOSIRWriter.OP_EXTENSION:
+                        handler.extension(0xff & tokens.get(index), 0xffff & tokens.getShort(index + 1));
+                        index += 3;
+                        break;
+                    case AMOSIRWriter.OP_PROCEDURE:
+                        handler.procedure(0xFFFFFFFFL & tokens.getInt(index), 0xff & tokens.get(index + 4));
+                        index += 5;
+                        break;
+                    case AMOSIRWriter.OP_REM:
+                    {
+                        int tokenID = 0xffff & tokens.getShort(index);
+                        index += 2;
+                        int text = _text(index);
+                        index += _textSize(index);
+                        handler.rem(tokenID, m_poolBytes, m_poolOffsets[text], m_poolLengths[text]);
+                        break;
+                    }
+                    default:
+                        throw( new java.io.StreamCorruptedException("Unknown AMOS IR opcode "+opcode+" in line "+line) );
+                }
+            }
+        } catch (IndexOutOfBoundsException exc) {
+            throw( new java.io.StreamCorruptedException("Truncated AMOS IR in line "+line) );
+        }
+    }
+
+    /**
+     * Pool index at the given position of the token stream
+     */
+    private int _text(int index)
+    {
+        int text = 0xffff & m_tokens.getShort(index);
+        return (text == 0xFFFF) ? m_tokens.getInt(index + 2) : text;
+    }
+
+    private int _textSize(int index)
+    {
+        return ((0xffff & m_tokens.getShort(index)) == 0xFFFF) ? 6 : 2;
+    }
+}
@@ -0,0 +1,278 @@
+// Copyright (C) 2012 David Gavilan Ruiz
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package amos.io ;
+
+/**
+ * Records token events in a compact binary form, that AMOSIRReader can replay
+ * without parsing the AMOS file again. Events are passed on to the next handler,
+ * if any, so a program can be printed and recorded at the same time.
+ *
+ * Format, big-endian:
+ * <pre>
+ *   int    MAGIC ("AMIR"), int VERSION
+ *   byte   key length, key bytes (e.g. the hash of the AMOS file)
+ *   int    number of lines
+ *   int[]  offset of each line in the token stream
+ *   byte[] indentation level of each line
+ *   int    number of texts in the pool
+ *   texts: u16 length, then the bytes as stored in the AMOS file (padded to a word)
+ *   int    size of the token stream, then the tokens of all the lines
+ * </pre>
+ * Each token is an opcode byte followed by its operands (see the OP_ constants).
+ * Identifiers, strings and comments are stored once in the pool, and referred by index.
+ */
+public class AMOSIRWriter implements AMOSTokenHandler
+{
+    public static final int MAGIC = 0x414D4952; // "AMIR"
+    /** Changes whenever the format or the meaning of the tokens changes */
+    public static final int VERSION = 2; // 2: locked procedures are decrypted
+
+    // opcodes; texts are pool indices (u16, or 0xFFFF followed by an int)
+    static final int OP_END_LINE = 0;
+    static final int OP_KEYWORD = 1;    // u16 token ID
+    static final int OP_REFERENCE = 2;  // u16 token ID, u8 flags, text
+    static final int OP_LABEL = 3;      // text
+    static final int OP_STRING = 4;     // u8 quote, text
+    static final int OP_INTEGER = 5;    // u8 radix, int value
+    static final int OP_FLOAT = 6;      // int bits of the Java float
+    static final int OP_EXTENSION = 7;  // u8 extension number, u16 offset
+    static final int OP_PROCEDURE = 8;  // int End Proc offset, u8 flags
+    static final int OP_REM = 9;        // u16 token ID, text
+
+    AMOSTokenHandler m_next ;
+    java.io.ByteArrayOutputStream m_tokenBytes = new java.io.ByteArrayOutputStream(4096);
+    java.io.DataOutputStream m_tokens = new java.io.DataOutputStream(m_tokenBytes);
+    int[]   m_lineOffsets = new int[256];
+    byte[]  m_indents = new byte[256];
+    int     m_numLines = 0;
+    // pool of texts, looked up by their length and bytes without creating Strings;
+    // open-addressed, linear probing, never more than half full
+    byte[][] m_poolSlots = new byte[1024][]; // padded bytes
+    int[]   m_poolLengths = new int[1024];
+    int[]   m_poolHashes = new int[1024];
+    int[]   m_poolIndices = new int[1024];
+    int     m_poolSize = 0;
+    java.io.ByteArrayOutputStream m_poolBytes = new java.io.ByteArrayOutputStream(1024);
+    java.io.DataOutputStream m_pool = new java.io.DataOutputStream(m_poolBytes);
+
+    public AMOSIRWriter()
+    {
+        this(null);
+    }
+
+    /**
+     * @param next handler that receives the events after recording them, or null
+     */
+    public AMOSIRWriter(AMOSTokenHandler next)
+    {
+        m_next = next;
+    }
+
+    public int getNumLines()
+    {
+        return m_numLines;
+    }
+
+    /**
+     * Writes the recorded program
+     * @param key identifies the program, e.g. the hash of the AMOS file (up to 255 bytes)
+     */
+    public void writeTo(java.io.OutputStream stream, byte[] key) throws java.io.IOException
+    {
+        java.io.DataOutputStream out = new java.io.DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeByte(key.length);
+        out.write(key);
+        out.writeInt(m_numLines);
+        for (int i = 0; i < m_numLines; ++i) {
+            out.writeInt(m_lineOffsets[i]);
+        }
+        out.write(m_indents, 0, m_numLines);
+        out.writeInt(m_poolSize);
+        m_poolBytes.writeTo(out);
+        out.writeInt(m_tokenBytes.size());
+        m_tokenBytes.writeTo(out);
+        out.flush();
+    }
+
+    public void startLine(int indent) throws java.io.IOException
+    {
+        if (m_numLines == m_lineOffsets.length) {
+            m_lineOffsets = java.util.Arrays.copyOf(m_lineOffsets, 2 * m_numLines);
+            m_indents = java.util.Arrays.copyOf(m_indents, 2 * m_numLines);
+        }
+        m_lineOffsets[m_numLines] = m_tokenBytes.size();
+        m_indents[m_numLines] = (byte)indent;
+        ++m_numLines;
+        if (m_next != null) m_next.startLine(indent);
+    }
+
+    public void endLine() throws java.io.IOException
+    {
+        m_tokens.writeByte(OP_END_LINE);
+        if (m_next != null) m_next.endLine();
+    }
+
+    public void keyword(int tokenID) throws java.io.IOException
+    {
+        m_tokens.writeByte(OP_KEYWORD);
+        m_tokens.writeShort(tokenID);
+        if (m_next != null) m_next.keyword(tokenID);
+    }
+
+    public void reference(int tokenID, int flags, byte[] name, int offset, int length) throws java.io.IOException
+    {
+        m_tokens.writeByte(OP_REFERENCE);
+        m_tokens.writeShort(tokenID);
+        m_tokens.writeByte(flags);
+        _writeText(name, offset, length);
+        if (m_next != null) m_next.reference(tokenID, flags, name, offset, length);
+    }
+
+    public void label(byte[] name, int offset, int length) throws java.io.IOException
+    {
+        m_tokens.writeByte(OP_LABEL);
+        _writeText(name, offset, length);
+        if (m_next != null) m_next.label(name, offset, length);
+    }
+
+    public void string(char quote, byte[] text, int offset, int length) throws java.io.IOException
+    {
+        m_tokens.writeByte(OP_STRING);
+        m_tokens.writeByte(quote);
+        _writeText(text, offset, length);
+        if (m_next != null) m_next.string(quote, text, offset, length);
+    }
+
+    public void integer(int value, int radix) throws java.io.IOException
+    {
+        m_tokens.writeByte(OP_INTEGER);
+        m_tokens.writeByte(radix);
+        m_tokens.writeInt(value);
+        if (m_next != null) m_next.integer(value, radix);
+    }
+
+    public void floatNumber(float value) throws java.io.IOException
+    {
+        m_tokens.writeByte(OP_FLOAT);
+        m_tokens.writeInt(Float.floatToRawIntBits(value));
+        if (m_next != null) m_next.floatNumber(value);
+    }
+
+    public void extension(int extNumber, int offset) throws java.io.IOException
+    {
+        m_tokens.writeByte(OP_EXTENSION);
+        m_tokens.writeByte(extNumber);
+        m_tokens.writeShort(offset);
+        if (m_next != null) m_next.extension(extNumber, offset);
+    }
+
+    public void procedure(long endProcOffset, int flags) throws java.io.IOException
+    {
+        m_tokens.writeByte(OP_PROCEDURE);
+        m_tokens.writeInt((int)endProcOffset);
+        m_tokens.writeByte(flags);
+        if (m_next != null) m_next.procedure(endProcOffset, flags);
+    }
+
+    public void rem(int tokenID, byte[] text, int offset, int length) throws java.io.IOException
+    {
+        m_tokens.writeByte(OP_REM);
+        m_tokens.writeShort(tokenID);
+        _writeText(text, offset, length);
+        if (m_next != null) m_next.rem(tokenID, text, offset, length);
+    }
+
+    /**
+     * Writes the pool index of the text, adding it to the pool if it's new
+     */
+    private void _writeText(byte[] text, int offset, int length) throws java.io.IOException
+    {
+        int paddedLength = (length + 1) & ~1;
+        // the length is part of the key, since the padding byte is kept
+        int hash = _hash(length, text, offset, paddedLength);
+        int mask = m_poolSlots.length - 1;
+        int slot = hash & mask;
+        byte[] bytes;
+        while ((bytes = m_poolSlots[slot]) != null) {
+            if (m_poolHashes[slot] == hash && m_poolLengths[slot] == length
+                && _equals(bytes, text, offset, paddedLength)) {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int index;
+        if (bytes != null) {
+            index = m_poolIndices[slot];
+        } else {
+            index = m_poolSize++;
+            m_poolSlots[slot] = java.util.Arrays.copyOfRange(text, offset, offset + paddedLength);
+            m_poolLengths[slot] = length;
+            m_poolHashes[slot] = hash;
+            m_poolIndices[slot] = index;
+            m_pool.writeShort(length);
+            m_pool.write(text, offset, paddedLength);
+            if (2 * m_poolSize > m_poolSlots.length) {
+                _growPool();
+            }
+        }
+        if (index < 0xFFFF) {
+            m_tokens.writeShort(index);
+        } else {
+            m_tokens.writeShort(0xFFFF);
+            m_tokens.writeInt(index);
+        }
+    }
+
+    private void _growPool()
+    {
+        byte[][] slots = new byte[2 * m_poolSlots.length][];
+        int[] lengths = new int[slots.length];
+        int[] hashes = new int[slots.length];
+        int[] indices = new int[slots.length];
+        int mask = slots.length - 1;
+        for (int i = 0; i < m_poolSlots.length; ++i) {
+            if (m_poolSlots[i] == null) continue;
+            int slot = m_poolHashes[i] & mask;
+            while (slots[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = m_poolSlots[i];
+            lengths[slot] = m_poolLengths[i];
+            hashes[slot] = m_poolHashes[i];
+            indices[slot] = m_poolIndices[i];
+        }
+        m_poolSlots = slots;
+        m_poolLengths = lengths;
+        m_poolHashes = hashes;
+        m_poolIndices = indices;
+    }
+
+    /**
+     * FNV-1a of the length and bytes, with the bits mixed for the low-bit mask, as in AMOSSymbolTable
+     */
+    private static int _hash(int length, byte[] text, int offset, int paddedLength)
+    {
+        int hash = 0x811C9DC5 ^ length;
+        for (int i = offset; i < offset + paddedLength; ++i) {
+            hash = (hash ^ (0xff & text[i])) * 0x01000193;
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean _equals(byte[] bytes, byte[] text, int offset, int paddedLength)
+    {
+        if (bytes.length != paddedLength) return false;
+        for (int i = 0; i < paddedLength; ++i) {
+            if (bytes[i] != text[offset + i]) return false;
+        }
+        return true;
+    }
+}
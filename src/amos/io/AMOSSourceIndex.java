@@ -0,0 +1,236 @@
+// Copyright (C) 2012 David Gavilan Ruiz
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package amos.io ;
+
+/**
+ * Offsets of the lines of the source code, and its split into chunks:
+ * each procedure, from its Procedure line to its End Proc line, is a chunk,
+ * and so is the code between procedures. Only line lengths and the first
+ * token of each line are read; nothing is decoded.
+ * Procedures end at the first End Proc line, since they can't be nested.
+ * The index can be saved with writeTo(), so it's only built once per file.
+ */
+public class AMOSSourceIndex
+{
+    static final int PROCEDURE_TOKEN = 0x0376;
+    static final int END_PROC_TOKEN = 0x0390;
+    static final int MAGIC = 0x414D4C49; // "AMLI"
+    static final int VERSION = 1;
+
+    long    m_offset ;
+    // from m_offset, 4 bytes per line
+    int[]   m_lineOffsets = new int[1024];
+    int     m_numLines = 0;
+    // one entry per chunk
+    int[]   m_chunkLines = new int[64]; // first line of each chunk
+    boolean[] m_isProcedure = new boolean[64];
+    int     m_numChunks = 0;
+    long    m_endOffset ;
+
+    /**
+     * Scans the source code
+     * @param source any position; it's not moved
+     * @param offset offset of the first line in the source
+     * @param sizeBytes size of the source code
+     */
+    public AMOSSourceIndex(ByteBufferSource source, long offset, long sizeBytes)
+        throws java.io.IOException, java.io.StreamCorruptedException
+    {
+        if (sizeBytes > Integer.MAX_VALUE) {
+            throw( new java.io.StreamCorruptedException("Source code too large: "+sizeBytes+" bytes") );
+        }
+        source = source.duplicate();
+        m_offset = offset;
+        m_endOffset = offset + sizeBytes;
+        long lineOffset = offset;
+        while (lineOffset < m_endOffset) {
+            source.seek(lineOffset);
+            int lineLength = 2 * source.readUnsignedByte();
+            if (lineLength == 0) {
+                throw( new java.io.StreamCorruptedException("Empty line at offset "+lineOffset) );
+            }
+            source.skip(1); // indent
+            // the first token is never encrypted, so this works for locked procedures too
+            int tokenID = (lineLength >= 4) ? source.readUnsignedWord() : 0;
+            if (tokenID == PROCEDURE_TOKEN) {
+                _addChunk(m_numLines, true);
+            } else if (m_numChunks == 0) {
+                _addChunk(0, false);
+            }
+            _addLine(lineOffset);
+            lineOffset += lineLength;
+            if (tokenID == END_PROC_TOKEN && lineOffset < m_endOffset) {
+                // the code after the procedure starts a new chunk
+                _addChunk(m_numLines, false);
+            }
+        }
+        if (lineOffset != m_endOffset) {
+            throw( new java.io.StreamCorruptedException("The last line ends after the source code") );
+        }
+    }
+
+    /**
+     * Reads an index saved with writeTo()
+     * @throws UnsupportedFormat if it isn't an index of this version
+     */
+    public AMOSSourceIndex(java.io.DataInputStream in)
+        throws java.io.IOException, UnsupportedFormat
+    {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw( new UnsupportedFormat("Not a source index") );
+        }
+        m_offset = in.readLong();
+        m_endOffset = in.readLong();
+        m_numLines = in.readInt();
+        m_lineOffsets = new int[m_numLines];
+        for (int i = 0; i < m_numLines; ++i) {
+            m_lineOffsets[i] = in.readInt();
+        }
+        m_numChunks = in.readInt();
+        m_chunkLines = new int[m_numChunks];
+        m_isProcedure = new boolean[m_numChunks];
+        for (int i = 0; i < m_numChunks; ++i) {
+            m_chunkLines[i] = in.readInt();
+            m_isProcedure[i] = in.readBoolean();
+        }
+    }
+
+    /**
+     * Saves the index, to be read with AMOSSourceIndex(DataInputStream)
+     */
+    public void writeTo(java.io.DataOutputStream out) throws java.io.IOException
+    {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(m_offset);
+        out.writeLong(m_endOffset);
+        out.writeInt(m_numLines);
+        for (int i = 0; i < m_numLines; ++i) {
+            out.writeInt(m_lineOffsets[i]);
+        }
+        out.writeInt(m_numChunks);
+        for (int i = 0; i < m_numChunks; ++i) {
+            out.writeInt(m_chunkLines[i]);
+            out.writeBoolean(m_isProcedure[i]);
+        }
+    }
+
+    /**
+     * Offset of the first line in the source
+     */
+    public long getOffset()
+    {
+        return m_offset;
+    }
+
+    /**
+     * Size of the indexed source code
+     */
+    public long getSizeBytes()
+    {
+        return m_endOffset - m_offset;
+    }
+
+    public int getNumLines()
+    {
+        return m_numLines;
+    }
+
+    /**
+     * Offset of the line in the source, from line 0
+     */
+    public long getLineOffset(int line)
+    {
+        if (line < 0 || line >= m_numLines) {
+            throw( new IndexOutOfBoundsException("No line "+line) );
+        }
+        return m_offset + m_lineOffsets[line];
+    }
+
+    /**
+     * Offset of the end of the line, i.e. of the next line
+     */
+    public long getLineEndOffset(int line)
+    {
+        return (line + 1 < m_numLines) ? getLineOffset(line + 1) : m_endOffset;
+    }
+
+    public int getNumChunks()
+    {
+        return m_numChunks;
+    }
+
+    /**
+     * First line of the chunk
+     */
+    public int getChunkStartLine(int chunk)
+    {
+        return m_chunkLines[chunk];
+    }
+
+    /**
+     * Line after the last line of the chunk
+     */
+    public int getChunkEndLine(int chunk)
+    {
+        return (chunk + 1 < m_numChunks) ? m_chunkLines[chunk + 1] : m_numLines;
+    }
+
+    /**
+     * Chunk where the line is
+     */
+    public int getChunk(int line)
+    {
+        getLineOffset(line); // check range
+        int chunk = java.util.Arrays.binarySearch(m_chunkLines, 0, m_numChunks, line);
+        return (chunk >= 0) ? chunk : -chunk - 2;
+    }
+
+    /**
+     * True if the chunk is a procedure, false if it's code between procedures
+     */
+    public boolean isProcedure(int chunk)
+    {
+        return m_isProcedure[chunk];
+    }
+
+    public long getChunkOffset(int chunk)
+    {
+        return getLineOffset(getChunkStartLine(chunk));
+    }
+
+    public long getChunkSize(int chunk)
+    {
+        return getLineEndOffset(getChunkEndLine(chunk) - 1) - getChunkOffset(chunk);
+    }
+
+    private void _addLine(long offset)
+    {
+        if (m_numLines == m_lineOffsets.length) {
+            m_lineOffsets = java.util.Arrays.copyOf(m_lineOffsets, 2 * m_numLines);
+        }
+        m_lineOffsets[m_numLines++] = (int)(offset - m_offset);
+    }
+
+    private void _addChunk(int line, boolean isProcedure)
+    {
+        if (m_numChunks > 0 && m_chunkLines[m_numChunks - 1] == line) {
+            // empty chunk, e.g. a procedure right after another one
+            m_isProcedure[m_numChunks - 1] = isProcedure;
+            return;
+        }
+        if (m_numChunks == m_chunkLines.length) {
+            m_chunkLines = java.util.Arrays.copyOf(m_chunkLines, 2 * m_numChunks);
+            m_isProcedure = java.util.Arrays.copyOf(m_isProcedure, 2 * m_numChunks);
+        }
+        m_chunkLines[m_numChunks] = line;
+        m_isProcedure[m_numChunks] = isProcedure;
+        ++m_numChunks;
+    }
+}
@@ -0,0 +1,196 @@
+// Copyright (C) 2012 David Gavilan Ruiz
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package amos.io ;
+
+/**
+ * Converts token events back to AMOS BASIC text, one line at a time.
+ * The line is built in a buffer that is reused for every line.
+ */
+public class AMOSSourcePrinter implements AMOSTokenHandler
+{
+    StringBuilder m_line = new StringBuilder(256);
+    char[]  m_chars = new char[256];
+    boolean m_isInLine = false;
+    java.io.Writer m_out = null;
+
+    /**
+     * Printer that keeps the last line, see getLine()
+     */
+    public AMOSSourcePrinter()
+    {
+    }
+
+    /**
+     * Printer that also writes every line to out, followed by the line separator
+     */
+    public AMOSSourcePrinter(java.io.Writer out)
+    {
+        m_out = out;
+    }
+
+    /**
+     * Text of the last line, without line separator.
+     * It's only valid until the next line starts.
+     */
+    public CharSequence getLine()
+    {
+        return m_line;
+    }
+
+    public String toString()
+    {
+        return m_line.toString();
+    }
+
+    /**
+     * Writes the last line without creating a String
+     */
+    public void writeLine(java.io.Writer out) throws java.io.IOException
+    {
+        int length = m_line.length();
+        if (m_chars.length < length) {
+            m_chars = new char[Math.max(length, 2 * m_chars.length)];
+        }
+        m_line.getChars(0, length, m_chars, 0);
+        out.write(m_chars, 0, length);
+    }
+
+    /**
+     * Adds the part of the line decoded so far to an error found in the middle of it
+     */
+    public java.io.StreamCorruptedException lineError(java.io.StreamCorruptedException exc)
+    {
+        if (!m_isInLine) {
+            return exc;
+        }
+        java.io.StreamCorruptedException error = new java.io.StreamCorruptedException(exc.getMessage()+" ("+m_line+")");
+        error.initCause(exc);
+        return error;
+    }
+
+    public void startLine(int indent)
+    {
+        m_isInLine = true;
+        m_line.setLength(0);
+        for (int i=1; i<indent; ++i) m_line.append(' ');
+    }
+
+    public void endLine() throws java.io.IOException
+    {
+        m_isInLine = false;
+        if (m_out != null) {
+            writeLine(m_out);
+            m_out.write(AMOSFileInputStream.LINE_SEPARATOR);
+        }
+    }
+
+    public void keyword(int tokenID)
+    {
+        String tokenStr = AMOSTokenTable.getToken(tokenID);
+        if ( tokenStr != null ) {
+            m_line.append(tokenStr);
+        } else {
+            m_line.append("[0x");
+            _appendUnsigned(tokenID, 4);
+            m_line.append(']');
+        }
+    }
+
+    public void reference(int tokenID, int flags, byte[] name, int offset, int length)
+    {
+        _appendText(name, offset, length);
+        if ( (flags&0x01)!=0 ) {
+            m_line.append('#'); // float reference
+        } else if ( (flags&0x02)!=0 ) {
+            m_line.append('$'); // string reference
+        }
+    }
+
+    public void label(byte[] name, int offset, int length)
+    {
+        _appendText(name, offset, length);
+        m_line.append(':');
+    }
+
+    public void string(char quote, byte[] text, int offset, int length)
+    {
+        m_line.append(quote);
+        _appendText(text, offset, length);
+        m_line.append(quote);
+    }
+
+    public void integer(int value, int radix)
+    {
+        switch(radix) {
+            case 2:
+                m_line.append('%');
+                _appendUnsigned(value, 1);
+                break;
+            case 16:
+                m_line.append('$');
+                _appendUnsigned(value, 4);
+                break;
+            default:
+                m_line.append(value);
+        }
+    }
+
+    public void floatNumber(float value)
+    {
+        m_line.append(value);
+    }
+
+    public void extension(int extNumber, int offset)
+    {
+        String tokenStr = AMOSTokenTable.getExtensionToken(extNumber, offset);
+        if ( tokenStr != null ) {
+            m_line.append(tokenStr);
+        } else {
+            m_line.append("[ext").append(extNumber).append("(0x");
+            _appendUnsigned(offset, 4);
+            m_line.append(")] ");
+        }
+    }
+
+    public void procedure(long endProcOffset, int flags)
+    {
+        keyword(0x0376);
+    }
+
+    public void rem(int tokenID, byte[] text, int offset, int length)
+    {
+        keyword(tokenID);
+        _appendText(text, offset, length);
+    }
+
+    /**
+     * Appends the text as stored, including the padding byte.
+     * AMOS strings are 8-bit (ISO-8859-1), so each byte is one char.
+     */
+    private void _appendText(byte[] text, int offset, int length)
+    {
+        int end = offset + ((length + 1) & ~1);
+        for (int i=offset; i<end; ++i) {
+            m_line.append((char)(0xff & text[i]));
+        }
+    }
+
+    /**
+     * Same as Integer.toHexString (shift 4) or toBinaryString (shift 1),
+     * but appending to the current line
+     */
+    private void _appendUnsigned(int value, int shift)
+    {
+        int numBits = Math.max(32 - Integer.numberOfLeadingZeros(value), 1);
+        int mask = (1 << shift) - 1;
+        for (int bit = ((numBits + shift - 1) / shift - 1) * shift; bit >= 0; bit -= shift) {
+            m_line.append(Character.forDigit((value >>> bit) & mask, 1 << shift));
+        }
+    }
+}
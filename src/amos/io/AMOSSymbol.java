@@ -0,0 +1,86 @@
+// Copyright (C) 2012 David Gavilan Ruiz
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package amos.io ;
+
+/**
+ * Variable, procedure or label name, interned by an AMOSSymbolTable.
+ * There is only one instance per kind, type and name, so symbols can be compared with ==.
+ */
+public final class AMOSSymbol
+{
+    public static final int VARIABLE = 0;
+    public static final int PROCEDURE = 1;
+    public static final int LABEL = 2;
+
+    int     m_id ;
+    int     m_kind ;
+    int     m_type ;
+    byte[]  m_bytes ;
+    String  m_name ;
+
+    AMOSSymbol(int id, int kind, int type, byte[] bytes)
+    {
+        m_id = id;
+        m_kind = kind;
+        m_type = type;
+        m_bytes = bytes;
+        m_name = new String(bytes, java.nio.charset.StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Index of the symbol in its table, from 0
+     */
+    public int getID()
+    {
+        return m_id;
+    }
+
+    /**
+     * VARIABLE, PROCEDURE or LABEL
+     */
+    public int getKind()
+    {
+        return m_kind;
+    }
+
+    /**
+     * Type flags of a variable: 0x01 for floats, 0x02 for strings, 0 for integers
+     */
+    public int getType()
+    {
+        return m_type;
+    }
+
+    /**
+     * Name without the type suffix
+     */
+    public String getName()
+    {
+        return m_name;
+    }
+
+    /**
+     * Name as written in the source code, e.g. "NAME$"
+     */
+    public String toString()
+    {
+        if (m_kind != VARIABLE) return m_name;
+        return ((m_type & 0x01) != 0) ? m_name+"#" : ((m_type & 0x02) != 0) ? m_name+"$" : m_name;
+    }
+
+    public static String kindName(int kind)
+    {
+        switch(kind) {
+            case VARIABLE: return "variable";
+            case PROCEDURE: return "procedure";
+            case LABEL: return "label";
+        }
+        return "unknown";
+    }
+}
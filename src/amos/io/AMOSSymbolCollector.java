@@ -0,0 +1,205 @@
+// Copyright (C) 2012 David Gavilan Ruiz
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package amos.io ;
+
+import java.util.List;
+import java.util.ArrayList;
+
+/**
+ * Token handler that interns the symbols of one program and counts how they are used:
+ * number of references, first line where they appear, and line where labels and
+ * procedures are defined. Events are passed on to the next handler, if any.
+ */
+public class AMOSSymbolCollector implements AMOSTokenHandler
+{
+    AMOSSymbolTable m_table ;
+    AMOSTokenHandler m_next ;
+    int     m_line = 0 ;
+    boolean m_isProcedureHeader = false ;
+    // symbols of this program, in order of appearance
+    List<AMOSSymbol> m_symbols = new ArrayList<AMOSSymbol>();
+    // indexed by symbol ID
+    int[]   m_references = new int[256];
+    int[]   m_firstLine = new int[256];
+    int[]   m_definitionLine = new int[256];
+    int     m_numReferences = 0 ;
+
+    /**
+     * @param table where symbols are interned, possibly shared with other programs
+     * @param next handler that receives the events afterwards, or null
+     */
+    public AMOSSymbolCollector(AMOSSymbolTable table, AMOSTokenHandler next)
+    {
+        m_table = table;
+        m_next = next;
+    }
+
+    /**
+     * Symbols used by this program, in order of appearance
+     */
+    public List<AMOSSymbol> getSymbols()
+    {
+        return java.util.Collections.unmodifiableList(m_symbols);
+    }
+
+    /**
+     * Total number of symbol occurrences, including definitions
+     */
+    public int getNumReferences()
+    {
+        return m_numReferences;
+    }
+
+    /**
+     * Number of occurrences of the symbol in this program
+     */
+    public int getReferences(AMOSSymbol symbol)
+    {
+        return (symbol.m_id < m_references.length) ? m_references[symbol.m_id] : 0;
+    }
+
+    /**
+     * First line where the symbol appears, from 1; 0 if it doesn't
+     */
+    public int getFirstLine(AMOSSymbol symbol)
+    {
+        return (symbol.m_id < m_firstLine.length) ? m_firstLine[symbol.m_id] : 0;
+    }
+
+    /**
+     * Line where a label or procedure is defined, from 1; 0 for variables,
+     * or if the definition wasn't found
+     */
+    public int getDefinitionLine(AMOSSymbol symbol)
+    {
+        return (symbol.m_id < m_definitionLine.length) ? m_definitionLine[symbol.m_id] : 0;
+    }
+
+    /**
+     * Number of symbols of the given kind used by this program
+     */
+    public int getNumSymbols(int kind)
+    {
+        int count = 0;
+        for (AMOSSymbol symbol : m_symbols) {
+            if (symbol.m_kind == kind) ++count;
+        }
+        return count;
+    }
+
+    /**
+     * Writes one CSV row per symbol: name, kind, references, first line and definition line
+     */
+    public void writeCSV(java.io.PrintWriter out)
+    {
+        out.println("name,kind,references,firstLine,definitionLine");
+        for (AMOSSymbol symbol : m_symbols) {
+            out.println(symbol+","+AMOSSymbol.kindName(symbol.m_kind)+","+getReferences(symbol)+","
+                +getFirstLine(symbol)+","+getDefinitionLine(symbol));
+        }
+    }
+
+    public String toString()
+    {
+        return m_symbols.size()+" symbols ("+getNumSymbols(AMOSSymbol.VARIABLE)+" variables, "
+            +getNumSymbols(AMOSSymbol.PROCEDURE)+" procedures, "+getNumSymbols(AMOSSymbol.LABEL)+" labels), "
+            +m_numReferences+" references in "+m_line+" lines";
+    }
+
+    public void startLine(int indent) throws java.io.IOException
+    {
+        ++m_line;
+        m_isProcedureHeader = false;
+        if (m_next != null) m_next.startLine(indent);
+    }
+
+    public void endLine() throws java.io.IOException
+    {
+        if (m_next != null) m_next.endLine();
+    }
+
+    public void keyword(int tokenID) throws java.io.IOException
+    {
+        if (m_next != null) m_next.keyword(tokenID);
+    }
+
+    public void reference(int tokenID, int flags, byte[] name, int offset, int length) throws java.io.IOException
+    {
+        switch(tokenID) {
+            case 0x0012: // Procedure call reference, or the name of a new procedure
+                _add(AMOSSymbol.PROCEDURE, 0, name, offset, length, m_isProcedureHeader);
+                m_isProcedureHeader = false;
+                break;
+            case 0x0018: // Label reference
+                _add(AMOSSymbol.LABEL, 0, name, offset, length, false);
+                break;
+            default: // Variable reference
+                _add(AMOSSymbol.VARIABLE, flags & 0x03, name, offset, length, false);
+        }
+        if (m_next != null) m_next.reference(tokenID, flags, name, offset, length);
+    }
+
+    public void label(byte[] name, int offset, int length) throws java.io.IOException
+    {
+        _add(AMOSSymbol.LABEL, 0, name, offset, length, true);
+        if (m_next != null) m_next.label(name, offset, length);
+    }
+
+    public void string(char quote, byte[] text, int offset, int length) throws java.io.IOException
+    {
+        if (m_next != null) m_next.string(quote, text, offset, length);
+    }
+
+    public void integer(int value, int radix) throws java.io.IOException
+    {
+        if (m_next != null) m_next.integer(value, radix);
+    }
+
+    public void floatNumber(float value) throws java.io.IOException
+    {
+        if (m_next != null) m_next.floatNumber(value);
+    }
+
+    public void extension(int extNumber, int offset) throws java.io.IOException
+    {
+        if (m_next != null) m_next.extension(extNumber, offset);
+    }
+
+    public void procedure(long endProcOffset, int flags) throws java.io.IOException
+    {
+        m_isProcedureHeader = true;
+        if (m_next != null) m_next.procedure(endProcOffset, flags);
+    }
+
+    public void rem(int tokenID, byte[] text, int offset, int length) throws java.io.IOException
+    {
+        if (m_next != null) m_next.rem(tokenID, text, offset, length);
+    }
+
+    private void _add(int kind, int type, byte[] name, int offset, int length, boolean isDefinition)
+    {
+        AMOSSymbol symbol = m_table.intern(kind, type, name, offset, length);
+        int id = symbol.m_id;
+        if (id >= m_references.length) {
+            int size = Math.max(id + 1, 2 * m_references.length);
+            m_references = java.util.Arrays.copyOf(m_references, size);
+            m_firstLine = java.util.Arrays.copyOf(m_firstLine, size);
+            m_definitionLine = java.util.Arrays.copyOf(m_definitionLine, size);
+        }
+        if (m_references[id] == 0) {
+            m_symbols.add(symbol);
+            m_firstLine[id] = m_line;
+        }
+        ++m_references[id];
+        ++m_numReferences;
+        if (isDefinition && m_definitionLine[id] == 0) {
+            m_definitionLine[id] = m_line;
+        }
+    }
+}
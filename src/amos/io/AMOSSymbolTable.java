@@ -0,0 +1,113 @@
+// Copyright (C) 2012 David Gavilan Ruiz
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package amos.io ;
+
+/**
+ * Interns the names of variables, procedures and labels.
+ * Symbols are looked up by their raw bytes, so no String is created
+ * when the name is already in the table. A table can be shared by all the
+ * programs of a batch, from several threads.
+ */
+public class AMOSSymbolTable
+{
+    // open-addressed, linear probing, never more than half full
+    AMOSSymbol[] m_slots = new AMOSSymbol[1024];
+    int[]   m_hashes = new int[1024];
+    AMOSSymbol[] m_symbols = new AMOSSymbol[512];
+    int     m_size = 0;
+
+    /**
+     * Returns the symbol with the given name, adding it if it's new
+     * @param kind AMOSSymbol.VARIABLE, PROCEDURE or LABEL
+     * @param type type flags of variables, 0 for the other kinds
+     */
+    public synchronized AMOSSymbol intern(int kind, int type, byte[] name, int offset, int length)
+    {
+        int hash = _hash(kind, type, name, offset, length);
+        int mask = m_slots.length - 1;
+        int index = hash & mask;
+        AMOSSymbol symbol;
+        while ((symbol = m_slots[index]) != null) {
+            if (m_hashes[index] == hash && symbol.m_kind == kind && symbol.m_type == type
+                && _equals(symbol.m_bytes, name, offset, length)) {
+                return symbol;
+            }
+            index = (index + 1) & mask;
+        }
+        symbol = new AMOSSymbol(m_size, kind, type, java.util.Arrays.copyOfRange(name, offset, offset + length));
+        m_slots[index] = symbol;
+        m_hashes[index] = hash;
+        if (m_size == m_symbols.length) {
+            m_symbols = java.util.Arrays.copyOf(m_symbols, 2 * m_size);
+        }
+        m_symbols[m_size++] = symbol;
+        if (2 * m_size > m_slots.length) {
+            _grow();
+        }
+        return symbol;
+    }
+
+    /**
+     * Number of different symbols
+     */
+    public synchronized int size()
+    {
+        return m_size;
+    }
+
+    /**
+     * Symbol with the given ID
+     */
+    public synchronized AMOSSymbol getSymbol(int id)
+    {
+        if (id < 0 || id >= m_size) {
+            throw( new IndexOutOfBoundsException("No symbol "+id) );
+        }
+        return m_symbols[id];
+    }
+
+    private void _grow()
+    {
+        AMOSSymbol[] slots = new AMOSSymbol[2 * m_slots.length];
+        int[] hashes = new int[slots.length];
+        int mask = slots.length - 1;
+        for (int i = 0; i < m_slots.length; ++i) {
+            if (m_slots[i] == null) continue;
+            int index = m_hashes[i] & mask;
+            while (slots[index] != null) {
+                index = (index + 1) & mask;
+            }
+            slots[index] = m_slots[i];
+            hashes[index] = m_hashes[i];
+        }
+        m_slots = slots;
+        m_hashes = hashes;
+    }
+
+    /**
+     * FNV-1a of the name, kind and type, with the bits mixed for the low-bit mask
+     */
+    private static int _hash(int kind, int type, byte[] name, int offset, int length)
+    {
+        int hash = 0x811C9DC5 ^ (kind << 8 | type);
+        for (int i = offset; i < offset + length; ++i) {
+            hash = (hash ^ (0xff & name[i])) * 0x01000193;
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean _equals(byte[] bytes, byte[] name, int offset, int length)
+    {
+        if (bytes.length != length) return false;
+        for (int i = 0; i < length; ++i) {
+            if (bytes[i] != name[offset + i]) return false;
+        }
+        return true;
+    }
+}
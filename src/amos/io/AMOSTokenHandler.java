@@ -0,0 +1,84 @@
+// Copyright (C) 2012 David Gavilan Ruiz
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package amos.io ;
+
+/**
+ * Receives the tokens of AMOS BASIC lines, as pushed by AMOSTokenReader.parseLine().
+ *
+ * Names and strings are given as ISO-8859-1 bytes in a buffer that is reused
+ * for the next token, so copy them if you need to keep them.
+ * The buffer holds the bytes as stored in the file: after the length bytes
+ * there may be a zero byte that pads the text to a whole word.
+ */
+public interface AMOSTokenHandler
+{
+    /**
+     * Start of a line
+     * @param indent indentation level; 1 means no indentation
+     */
+    void startLine(int indent) throws java.io.IOException ;
+
+    /**
+     * End of the current line
+     */
+    void endLine() throws java.io.IOException ;
+
+    /**
+     * Instruction or symbol of the core set, see AMOSTokenTable.getToken()
+     */
+    void keyword(int tokenID) throws java.io.IOException ;
+
+    /**
+     * Reference to a variable, a procedure (0x0012) or a label (0x0018)
+     * @param tokenID 0x0006, 0x0012 or 0x0018
+     * @param flags bit 0 for float variables, bit 1 for strings
+     */
+    void reference(int tokenID, int flags, byte[] name, int offset, int length) throws java.io.IOException ;
+
+    /**
+     * Definition of a label, e.g. "LOOP:"
+     */
+    void label(byte[] name, int offset, int length) throws java.io.IOException ;
+
+    /**
+     * String literal
+     * @param quote '"' or '\''
+     */
+    void string(char quote, byte[] text, int offset, int length) throws java.io.IOException ;
+
+    /**
+     * Integer literal
+     * @param radix 2 for binary (%101), 16 for hexadecimal ($ff), 10 otherwise
+     */
+    void integer(int value, int radix) throws java.io.IOException ;
+
+    /**
+     * Float literal
+     */
+    void floatNumber(float value) throws java.io.IOException ;
+
+    /**
+     * Instruction of an extension, see AMOSTokenTable.getExtensionToken()
+     * @param offset offset into the token table of the extension (16 bits)
+     */
+    void extension(int extNumber, int offset) throws java.io.IOException ;
+
+    /**
+     * Procedure header. The name follows as a reference(0x0012) event.
+     * @param endProcOffset number of bytes to the corresponding End Proc line
+     * @param flags procedure flags, e.g. 0x80 folded, 0x40 locked, 0x20 encrypted
+     */
+    void procedure(long endProcOffset, int flags) throws java.io.IOException ;
+
+    /**
+     * Comment
+     * @param tokenID 0x064A for "REM", 0x0652 for "'"
+     */
+    void rem(int tokenID, byte[] text, int offset, int length) throws java.io.IOException ;
+}
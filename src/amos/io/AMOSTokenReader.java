@@ -0,0 +1,557 @@
+// Copyright (C) 2012 David Gavilan Ruiz
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package amos.io ;
+
+/**
+ * Pull parser of the tokenised AMOS BASIC source code.
+ * Call next() to get the type of the next event, and the getters to read it:
+ * <pre>
+ *   while (reader.hasNext()) {
+ *       switch (reader.next()) {
+ *           case AMOSTokenReader.REFERENCE: index(reader.getText()); break;
+ *           ...
+ *       }
+ *   }
+ * </pre>
+ * Nothing is converted to text unless getText() or getKeyword() are called.
+ * parseLine() pushes the events of a line to an AMOSTokenHandler instead.
+ * Encrypted procedures are decrypted line by line as they are read, so they
+ * must be read from their Procedure line.
+ */
+public class AMOSTokenReader
+{
+    public static final int START_LINE = 1;
+    public static final int END_LINE = 2;
+    public static final int KEYWORD = 3;
+    public static final int REFERENCE = 4;
+    public static final int LABEL = 5;
+    public static final int STRING = 6;
+    public static final int INTEGER = 7;
+    public static final int FLOAT = 8;
+    public static final int EXTENSION = 9;
+    public static final int PROCEDURE = 10;
+    public static final int REM = 11;
+
+    static final int PROC_COMPILED = 0x10;
+    static final int PROC_ENCRYPTED = 0x20;
+    static final int END_PROC_TOKEN = 0x0390;
+
+    AMOSByteSource m_source ; // m_fileSource, or m_lineSource for decrypted lines
+    AMOSByteSource m_fileSource ;
+    long    m_sourceSizeBytes ;
+    long    m_readBytes ;
+    boolean m_isInLine = false ;
+    int     m_lineNumber = 0 ; // lines read
+    long    m_lineStart ; // position of the current line in m_fileSource
+    long    m_lineStartReadBytes ;
+    int     m_lineWords ; // in words (2 bytes)
+    int     m_readWords ;
+    int     m_lastTokenID ;
+    // current event
+    int     m_tokenID ;
+    int     m_indent ;
+    int     m_flags ;
+    int     m_intValue ;
+    int     m_radix ;
+    float   m_floatValue ;
+    int     m_extNumber ;
+    long    m_endProcOffset ;
+    byte[]  m_text = new byte[256];
+    int     m_textLength ;
+    // decryption of the lines of an encrypted procedure
+    boolean m_isDecrypting = false ;
+    int     m_key ;
+    int     m_key2 ;
+    int     m_key3 ;
+    byte[]  m_line = new byte[2 * 255];
+    ByteBufferSource m_lineSource = new ByteBufferSource(m_line);
+
+    /**
+     * @param source positioned at the beginning of a line
+     * @param sourceSizeBytes size of the source code, from the file header
+     * @param readBytes amount of source code already read or skipped
+     */
+    public AMOSTokenReader(AMOSByteSource source, long sourceSizeBytes, long readBytes)
+    {
+        m_source = source;
+        m_fileSource = source;
+        m_sourceSizeBytes = sourceSizeBytes;
+        m_readBytes = readBytes;
+    }
+
+    /**
+     * Reader that goes on from a cursor
+     * @param source positioned at cursor.getOffset()
+     */
+    public AMOSTokenReader(AMOSByteSource source, long sourceSizeBytes, AMOSCursor cursor)
+    {
+        this(source, sourceSizeBytes, cursor.m_readBytes);
+        m_lineNumber = cursor.m_lineNumber;
+        m_isDecrypting = cursor.m_isDecrypting;
+        m_key = cursor.m_key;
+        m_key2 = cursor.m_key2;
+        m_key3 = cursor.m_key3;
+    }
+
+    /**
+     * Position before the next line, to go on from there with another reader
+     * @throws IllegalStateException in the middle of a line
+     */
+    public AMOSCursor getCursor()
+    {
+        if (m_isInLine) {
+            throw( new IllegalStateException("Not at the start of a line") );
+        }
+        return new AMOSCursor(m_fileSource.position(), m_readBytes, m_lineNumber, m_isDecrypting, m_key, m_key2, m_key3);
+    }
+
+    /**
+     * Number of lines read, including the current one
+     */
+    public int getLineNumber()
+    {
+        return m_lineNumber;
+    }
+
+    /**
+     * After an error in the middle of a line, e.g. a StreamCorruptedException,
+     * goes to the end of the line as given by its length, so reading can go on
+     * from the next line. If the error went past the end of the line, reading
+     * goes on from where it stopped.
+     * @return number of bytes skipped
+     */
+    public long resync() throws java.io.IOException
+    {
+        if (!m_isInLine) {
+            return 0;
+        }
+        m_source = m_fileSource;
+        m_isInLine = false;
+        long lineEnd = m_lineStart + 2L * m_lineWords;
+        long position = m_fileSource.position();
+        long skipped = 0;
+        if (lineEnd > position) {
+            skipped = lineEnd - position;
+            m_fileSource.skip(skipped);
+            position = lineEnd;
+        }
+        m_readBytes = m_lineStartReadBytes + (position - m_lineStart);
+        return skipped;
+    }
+
+    /**
+     * After an EOFException, tells if the file ends before the source code does,
+     * or if it was only a token going past the end of a decrypted line,
+     * which can be skipped with resync()
+     */
+    public boolean isTruncated()
+    {
+        long size = m_fileSource.size();
+        if (size < 0) {
+            return m_source == m_fileSource;
+        }
+        // where the source code should end, from the start of the last line read
+        return m_lineStart + (m_sourceSizeBytes - m_lineStartReadBytes) > size;
+    }
+
+    /**
+     * Checks if there are still events to read
+     */
+    public boolean hasNext()
+    {
+        return m_isInLine || m_readBytes < m_sourceSizeBytes;
+    }
+
+    /**
+     * Amount of source code read, counting whole lines
+     */
+    public long getReadBytes()
+    {
+        return m_readBytes;
+    }
+
+    /**
+     * Skips the rest of the source code without decoding it
+     */
+    public void skipSource() throws java.io.IOException
+    {
+        if (m_isInLine) {
+            if (m_source == m_fileSource) {
+                m_source.skip(2L * (m_lineWords - m_readWords));
+            }
+            m_source = m_fileSource;
+            m_isInLine = false;
+        }
+        if (m_readBytes < m_sourceSizeBytes) {
+            m_source.skip(m_sourceSizeBytes - m_readBytes);
+            m_readBytes = m_sourceSizeBytes;
+        }
+    }
+
+    /**
+     * Reads the next event
+     * @return the event type, e.g. START_LINE
+     */
+    public int next() throws java.io.IOException, java.io.StreamCorruptedException
+    {
+        if (!m_isInLine) {
+            m_lineStart = m_source.position();
+            m_lineStartReadBytes = m_readBytes;
+            m_lineWords = m_source.readUnsignedByte();
+            m_readBytes += m_lineWords * 2;
+            m_indent = m_source.readUnsignedByte();
+            if (m_isDecrypting && m_lineWords > 1) {
+                _decryptLine();
+            }
+            m_readWords = 1;
+            m_lastTokenID = 0;
+            m_isInLine = true;
+            ++m_lineNumber;
+            return START_LINE;
+        }
+        while (m_readWords < m_lineWords) {
+            int tokenID = m_source.readUnsignedWord();
+            ++m_readWords;
+            m_lastTokenID = tokenID;
+            m_tokenID = tokenID;
+            switch(tokenID) {
+                case 0: // NULL token
+                    continue;
+                case 0x0006: // Variable reference
+                case 0x0012: // Procedure call reference
+                case 0x0018: // Label reference
+                {
+                    m_source.skip(2); // unknown purpose
+                    int strlength = m_source.readUnsignedByte();
+                    m_flags = m_source.readUnsignedByte();
+                    _readText(strlength);
+                    return REFERENCE;
+                }
+                case 0x000C: // Label
+                {
+                    m_source.skip(2); // unknown purpose
+                    int strlength = m_source.readUnsignedByte();
+                    m_source.skip(1); // flag
+                    _readText(strlength);
+                    return LABEL;
+                }
+                case 0x0026: // String with double quotes
+                case 0x002E: // String with single quotes
+                {
+                    _readText(m_source.readUnsignedWord());
+                    m_readWords -= 1; // the length is a word, not two bytes
+                    return STRING;
+                }
+                case 0x001E: // Binary integer value
+                case 0x0036: // Hexadecimal integer value
+                case 0x003E: // Decimal integer value
+                {
+                    m_intValue = m_source.readInt();
+                    m_readWords += 2;
+                    m_radix = (tokenID == 0x001E) ? 2 : (tokenID == 0x0036) ? 16 : 10;
+                    return INTEGER;
+                }
+                case 0x0046: // Float value
+                {
+                    m_intValue = m_source.readInt();
+                    m_floatValue = AMOSFileInputStream.readFloat(m_intValue);
+                    m_readWords += 2;
+                    return FLOAT;
+                }
+                case 0x004E: // Extension command
+                {
+                    m_extNumber = m_source.readUnsignedByte();
+                    m_source.skip(1); // unused
+                    // 16-bit offset into extension's token table
+                    m_intValue = m_source.readUnsignedWord();
+                    m_readWords += 2;
+                    return EXTENSION;
+                }
+                // Specially sized tokens
+                // -------------------------------------------
+                case 0x023C: // FOR
+                case 0x0250: // REPEAT
+                case 0x0268: // WHILE
+                case 0x027E: // DO
+                case 0x02BE: // IF
+                case 0x02D0: // ELSE
+                case 0x0404: // DATA
+                {
+                    m_source.skip(2); // unknown purpose
+                    m_readWords += 1;
+                    return KEYWORD;
+                }
+                case 0x0290: // EXIT IF
+                case 0x029E: // EXIT
+                case 0x0316: // ON
+                {
+                    m_source.skip(4); // unknown purpose
+                    m_readWords += 2;
+                    return KEYWORD;
+                }
+                case 0x0376: // PROCEDURE
+                {
+                    // number of bytes to corresponding End Proc line
+                    m_endProcOffset = 0xFFFFFFFFL & m_source.readInt();
+                    int seed = m_source.readUnsignedWord();
+                    m_flags = m_source.readUnsignedByte();
+                    int seed2 = m_source.readUnsignedByte();
+                    m_readWords += 4;
+                    // compiled procedures are machine code, not tokens
+                    if ((m_flags & PROC_ENCRYPTED) != 0 && (m_flags & PROC_COMPILED) == 0) {
+                        m_key = (int)(m_endProcOffset << 8) | seed2;
+                        m_key2 = 1;
+                        m_key3 = seed;
+                        m_isDecrypting = true;
+                        m_flags &= ~PROC_ENCRYPTED; // not anymore
+                    }
+                    return PROCEDURE;
+                }
+                case 0x064A: // REM
+                case 0x0652: // REM type 2
+                {
+                    m_source.skip(1); // unused
+                    _readText(m_source.readUnsignedByte());
+                    m_readWords -= 1; // unused byte and length make one word
+                    return REM;
+                }
+                default:
+                    return KEYWORD;
+            }
+        }
+        // last token is supposed to be null; if not, the line can still be skipped with resync()
+        if (m_lastTokenID != 0) {
+            throw( new java.io.StreamCorruptedException("Line didn't end with a NULL token, but 0x"+Integer.toHexString(m_lastTokenID)) );
+        }
+        m_isInLine = false;
+        m_source = m_fileSource;
+        return END_LINE;
+    }
+
+    /**
+     * Reads the events of the next line, and pushes them to the handler
+     */
+    public void parseLine(AMOSTokenHandler handler) throws java.io.IOException, java.io.StreamCorruptedException
+    {
+        int event = next();
+        if (event != START_LINE) {
+            throw( new IllegalStateException("Not at the start of a line") );
+        }
+        handler.startLine(m_indent);
+        while ((event = next()) != END_LINE) {
+            switch(event) {
+                case KEYWORD:
+                    handler.keyword(m_tokenID);
+                    break;
+                case REFERENCE:
+                    handler.reference(m_tokenID, m_flags, m_text, 0, m_textLength);
+                    break;
+                case LABEL:
+                    handler.label(m_text, 0, m_textLength);
+                    break;
+                case STRING:
+                    handler.string(getQuote(), m_text, 0, m_textLength);
+                    break;
+                case INTEGER:
+                    handler.integer(m_intValue, m_radix);
+                    break;
+                case FLOAT:
+                    handler.floatNumber(m_floatValue);
+                    break;
+                case EXTENSION:
+                    handler.extension(m_extNumber, m_intValue);
+                    break;
+                case PROCEDURE:
+                    handler.procedure(m_endProcOffset, m_flags);
+                    break;
+                case REM:
+                    handler.rem(m_tokenID, m_text, 0, m_textLength);
+                    break;
+            }
+        }
+        handler.endLine();
+    }
+
+    /**
+     * Reads the events of the next line without pushing them anywhere,
+     * e.g. to get to a line inside an encrypted procedure
+     */
+    public void skipLine() throws java.io.IOException, java.io.StreamCorruptedException
+    {
+        if (next() != START_LINE) {
+            throw( new IllegalStateException("Not at the start of a line") );
+        }
+        while (next() != END_LINE) {
+            // nothing to do
+        }
+    }
+
+    /**
+     * Reads all the remaining source code, and pushes its events to the handler
+     */
+    public void parse(AMOSTokenHandler handler) throws java.io.IOException, java.io.StreamCorruptedException
+    {
+        while (hasNext()) {
+            parseLine(handler);
+        }
+    }
+
+    // getters of the current event
+    // -------------------------------------------------------
+
+    /**
+     * Token ID of the current event, e.g. 0x0006 for a variable reference
+     */
+    public int getTokenID()
+    {
+        return m_tokenID;
+    }
+
+    /**
+     * Indentation level of the line (START_LINE)
+     */
+    public int getIndent()
+    {
+        return m_indent;
+    }
+
+    /**
+     * Flags of a REFERENCE or a PROCEDURE
+     */
+    public int getFlags()
+    {
+        return m_flags;
+    }
+
+    /**
+     * Value of an INTEGER
+     */
+    public int getIntValue()
+    {
+        return m_intValue;
+    }
+
+    /**
+     * Radix of an INTEGER: 2, 10 or 16
+     */
+    public int getRadix()
+    {
+        return m_radix;
+    }
+
+    /**
+     * Value of a FLOAT
+     */
+    public float getFloatValue()
+    {
+        return m_floatValue;
+    }
+
+    /**
+     * Extension number of an EXTENSION
+     */
+    public int getExtensionNumber()
+    {
+        return m_extNumber;
+    }
+
+    /**
+     * Offset into the token table of the extension (EXTENSION)
+     */
+    public int getExtensionOffset()
+    {
+        return m_intValue;
+    }
+
+    /**
+     * Number of bytes from a PROCEDURE line to its End Proc line
+     */
+    public long getEndProcOffset()
+    {
+        return m_endProcOffset;
+    }
+
+    /**
+     * Quote of a STRING: '"' or '\''
+     */
+    public char getQuote()
+    {
+        return (m_tokenID == 0x002E) ? '\'' : '\"';
+    }
+
+    /**
+     * Bytes of the name, string or comment of the current event.
+     * The buffer is reused for the next event.
+     */
+    public byte[] getTextBuffer()
+    {
+        return m_text;
+    }
+
+    public int getTextLength()
+    {
+        return m_textLength;
+    }
+
+    /**
+     * Name, string or comment of the current event, as a new String
+     */
+    public String getText()
+    {
+        return new String(m_text, 0, m_textLength, java.nio.charset.StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Name of the KEYWORD or EXTENSION instruction, or null if unknown
+     */
+    public String getKeyword()
+    {
+        if (m_tokenID == 0x004E) {
+            return AMOSTokenTable.getExtensionToken(m_extNumber, m_intValue);
+        }
+        return AMOSTokenTable.getToken(m_tokenID);
+    }
+
+    /**
+     * Reads the rest of the line and decrypts it in the line buffer, where
+     * its tokens are then read from. The first token is never encrypted.
+     * Procedures end at the first End Proc line, since they can't be nested.
+     */
+    private void _decryptLine() throws java.io.IOException
+    {
+        int length = 2 * m_lineWords - 2; // without length and indent
+        m_fileSource.readFully(m_line, 0, length);
+        for (int i = 2; i < length; i += 2) {
+            m_line[i] ^= (byte)(m_key >> 8);
+            m_line[i + 1] ^= (byte)m_key;
+            m_key += m_key2;
+            m_key2 += m_key3;
+            m_key = (m_key >>> 1) | (m_key << 31);
+        }
+        if (((0xff & m_line[0]) << 8 | (0xff & m_line[1])) == END_PROC_TOKEN) {
+            m_isDecrypting = false;
+        }
+        m_lineSource.seek(0);
+        m_source = m_lineSource;
+    }
+
+    /**
+     * Reads a text of strlength bytes, padded to a whole word
+     */
+    private void _readText(int strlength) throws java.io.IOException
+    {
+        int paddedLength = (strlength + 1) & ~1; // round up to words
+        if (m_text.length < paddedLength) {
+            m_text = new byte[Math.max(paddedLength, 2 * m_text.length)];
+        }
+        m_source.readFully(m_text, 0, paddedLength);
+        m_textLength = strlength;
+        m_readWords += 2 + (paddedLength >> 1);
+    }
+}
@@ -0,0 +1,423 @@
+// Copyright (C) 2012 David Gavilan Ruiz
+// 
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+// 
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package amos.io ;
+
+/**
+ * Names of the AMOS BASIC tokens, shared by all the decoders.
+ * The tables are built once and never modified afterwards, so they
+ * can be read from any thread. Lookups don't box the token IDs.
+ */
+public final class AMOSTokenTable
+{
+    /**
+     * Open-addressed map from int keys to Strings
+     */
+    static final class IntStringMap
+    {
+        int[]    m_keys ;
+        String[] m_values ;
+        int      m_mask ;
+
+        IntStringMap(int capacity)
+        {
+            int size = Integer.highestOneBit(Math.max(capacity, 2) * 2 - 1) * 2;
+            m_keys = new int[size];
+            m_values = new String[size];
+            m_mask = size - 1;
+        }
+
+        void put(int key, String value)
+        {
+            int index = _slot(key);
+            m_keys[index] = key;
+            m_values[index] = value;
+        }
+
+        String get(int key)
+        {
+            return m_values[_slot(key)];
+        }
+
+        /**
+         * Linear probing; the table is never full since it's twice the capacity
+         */
+        private int _slot(int key)
+        {
+            int index = (key * 0x9E3779B9) >>> 16 & m_mask;
+            while (m_values[index] != null && m_keys[index] != key) {
+                index = (index + 1) & m_mask;
+            }
+            return index;
+        }
+    }
+
+    /** Core instruction set, indexed by token ID (16 bits) */
+    private static final String[] TOKENS = new String[0x10000];
+    /** Extension instructions, keyed by (extension number << 16) | offset */
+    private static final IntStringMap EXTENSIONS = new IntStringMap(64);
+
+    static {
+        _initTokenMap();
+    }
+
+    private AMOSTokenTable()
+    {
+    }
+
+    /**
+     * Name of a core token, or null if unknown
+     */
+    public static String getToken(int tokenID)
+    {
+        return TOKENS[0xffff & tokenID];
+    }
+
+    /**
+     * Name of an extension token, or null if unknown
+     */
+    public static String getExtensionToken(int extNumber, int offset)
+    {
+        return EXTENSIONS.get((extNumber<<16)|offset);
+    }
+
+    private static void _token(int tokenID, String name)
+    {
+        TOKENS[tokenID] = name;
+    }
+
+    private static void _extension(int key, String name)
+    {
+        EXTENSIONS.put(key, name);
+    }
+
+    private static void _initTokenMap()
+    {
+        _token(0x0054, " : ");
+        _token(0x005C, ",");
+        _token(0x0064, ";");
+        _token(0x0074, "(");
+        _token(0x007c, ")");
+        _token(0x0084, "[");
+        _token(0x008c, "]");
+        _token(0x0094, " To ");
+        _token(0x009c, "Not ");
+        _token(0x00f2, "Inkey$");
+        _token(0x012c, "Double Buffer");
+        _token(0x0140, "Start");
+        _token(0x015a, "Doke ");
+        // tokens followed by extra words, skipped by AMOSTokenReader
+        _token(0x023C, "For ");
+        _token(0x0250, "Repeat");
+        _token(0x0268, "While ");
+        _token(0x027E, "Do ");
+        _token(0x02BE, "If ");
+        _token(0x02D0, "Else ");
+        _token(0x0290, "Exit If ");
+        _token(0x029E, "Exit ");
+        _token(0x0316, "On ");
+        _token(0x0376, "Procedure ");
+        _token(0x0404, "Data ");
+        _token(0x0246, "Next ");
+        _token(0x025c, "Until ");
+        _token(0x0274, "Wend");
+        _token(0x0286, "Loop");
+        _token(0x02c6, " Then ");
+        _token(0x02a8, "Goto ");
+        _token(0x02b2, "Gosub ");
+        _token(0x02da, "End If");
+        _token(0x02e6, "On Error ");
+        _token(0x031e, "Resume Label ");
+        _token(0x0330, "Resume");
+        _token(0x033c, "Pop Proc");
+        _token(0x0356, " Step ");
+        _token(0x0360, "Return");
+        _token(0x0386, "Proc ");
+        _token(0x0390, "End Proc ");
+        _token(0x03aa, "Global ");
+        _token(0x03b6, "End ");
+        _token(0x03e2, "Param");
+        _token(0x040e, "Read ");
+        _token(0x0418, "Restore ");
+        _token(0x0426, "Break Off ");
+        _token(0x0444, "Inc ");
+        _token(0x044e, "Dec ");
+        _token(0x0458, "Add ");
+        _token(0x0462, "Add ");
+        _token(0x0476, "Print ");
+        _token(0x049c, "Input$");
+        _token(0x04d0, "Input ");
+        _token(0x050e, "Mid$");
+        _token(0x0528, "Left$");
+        _token(0x0536, "Right$");
+        _token(0x0552, "Chr$");
+        _token(0x057c, "Upper$");
+        _token(0x0598, "Str$");
+        _token(0x05a4, "Val");
+        _token(0x05da, "Len");
+        _token(0x05e4, "Instr");
+        _token(0x0640, "Dim ");
+        _token(0x064A, "REM "); // REM
+        _token(0x0652, "\'"); // REM2
+        _token(0x0686, "Rnd");
+        _token(0x0670, "Edit");
+        _token(0x06a0, "Sgn");
+        _token(0x06aa, "Abs");
+        _token(0x06b4, "Int");
+        _token(0x06d6, "Pi#");
+        _token(0x0702, "Sin");
+        _token(0x070c, "Cos");
+        _token(0x0768, "Sqr");
+        _token(0x09ea, "Screen Open ");
+        _token(0x0a04, "Screen Close ");
+        _token(0x0a18, "Screen Display ");
+        _token(0x0a36, "Screen Offset ");
+        _token(0x0a88, "Screen To Front ");
+        _token(0x0a90, "Screen To Back ");
+        _token(0x0aa6, "Screen To Back ");
+        _token(0x0aae, "Screen Hide");
+        _token(0x0ac0, "Screen Hide ");
+        _token(0x0ac8, "Screen Show");
+        _token(0x0ada, "Screen Show ");
+        _token(0x0b16, "View");
+        _token(0x0b34, "Auto View On ");
+        _token(0x0b90, "Get Palette ");
+        _token(0x0bb8, "Cls ");
+        _token(0x0bee, "X Hard");
+        _token(0x0c06, "Y Hard");
+        _token(0x0c1e, "X Screen");
+        _token(0x0c38, "Y Screen");
+        _token(0x0c6e, "Screen ");
+        _token(0x0c7c, "Screen");
+        _token(0x0c84, "Hires");
+        _token(0x0c90, "Lowres");
+        _token(0x0cca, "Wait Vbl");
+        _token(0x0cfc, "Palette ");
+        _token(0x0d1c, "Colour ");
+        _token(0x0d2c, "Colour");
+        _token(0x0d34, "Flash Off");
+        _token(0x0d44, "Flash ");
+        _token(0x0d52, "Shift Off");
+        _token(0x0d62, "Shift Up ");
+        _token(0x0d78, "Shift Down ");
+        _token(0x0d90, "Set Rainbow ");
+        _token(0x0dd4, "Rainbow Del ");
+        _token(0x0ddc, "Rainbow ");
+        _token(0x0df0, "Rain");
+        _token(0x0dfe, "Fade ");
+        _token(0x0e2c, "Autoback ");
+        _token(0x0e3c, "Plot ");
+        _token(0x0e56, "Point");
+        _token(0x0e74, "Draw ");
+        _token(0x0eac, "Polyline ");
+        _token(0x0ec8, "Bar ");
+        _token(0x0ed8, "Box ");
+        _token(0x0f16, "Text Length");
+        _token(0x0f3a, "Text Base");
+        _token(0x0fc2, "Font$");
+        _token(0x1044, "Ink ");
+        _token(0x1050, "Ink ");
+        _token(0x1066, "Gr Writing ");
+        _token(0x1078, "Clip");
+        _token(0x1084, "Clip ");
+        _token(0x1146, "Get Block ");
+        _token(0x1160, "Get Block ");
+        _token(0x1172, "Put Block ");
+        _token(0x1184, "Put Block ");
+        _token(0x11ae, "Del Block");
+        _token(0x11d8, "Key State");
+        _token(0x11f8, "Joy");
+        _token(0x1aa8, "Bob Off");
+        _token(0x1202, "Jup");
+        _token(0x120c, "Jdown");
+        _token(0x1218, "Jleft");
+        _token(0x1224, "Jright");
+        _token(0x1232, "Fire");
+        _token(0x123e, "True");
+        _token(0x1248, "False");
+        _token(0x1262, "Scancode");
+        _token(0x1280, "Clear Key");
+        _token(0x1290, "Wait Key");
+        _token(0x129e, "Wait ");
+        _token(0x12ce, "Timer");
+        _token(0x12f4, "Wind Open ");
+        _token(0x131a, "Wind Close");
+        _token(0x1351, "Window ");
+        _token(0x135e, "Window ");
+        _token(0x1378, "Locate ");
+        _token(0x1392, "Home");
+        _token(0x13c6, "At");
+        _token(0x13d2, "Pen ");
+        _token(0x13dc, "Paper ");
+        _token(0x13e8, "Centre ");
+        _token(0x1446, "Curs Off");
+        _token(0x14b2, "Shade On");
+        _token(0x1528, "Cdown");
+        _token(0x1540, "Cright");
+        _token(0x1646, "Reserve Zone ");
+        _token(0x164e, "Reset Zone ");
+        _token(0x1660, "Reset Zone ");
+        _token(0x1668, "Set Zone ");
+        _token(0x1680, "Zone");
+        _token(0x16e2, "Mouse Zone");
+        _token(0x174e, "Exist");
+        _token(0x175A, "Dir$");
+        _token(0x17d4, "Load Iff ");
+        _token(0x17e4, "Load Iff ");
+        _token(0x180c, "Bload ");
+        _token(0x181a, "Bsave ");
+        _token(0x184e, "Load ");
+        _token(0x185A, "Load ");
+        _token(0x18bc, "Open In ");
+        _token(0x190c, "Close ");
+        _token(0x1986, "Set Sprite Buffer ");
+        _token(0x199e, "Sprite Off ");
+        _token(0x19b0, "Sprite Off ");
+        _token(0x19e6, "Sprite Update On");
+        _token(0x1a26, "Spritebob Col");
+        _token(0x1a94, "Sprite ");
+        _token(0x1ab6, "Bob Off ");
+        _token(0x1abe, "Bob Update Off");
+        _token(0x1ad2, "Bob Update On");
+        _token(0x1ae6, "Bob Update");
+        _token(0x1b14, "Bobsprite Col");
+        _token(0x1b36, "Bob Col");
+        _token(0x1b46, "Bob Col");
+        _token(0x1b52, "Col");
+        _token(0x1b7a, "Limit Bob ");
+        _token(0x1b9e, "Bob ");
+        _token(0x1bae, "Get Sprite Palette");
+        _token(0x1bd0, "Get Sprite ");
+        _token(0x1bfc, "Get Bob ");
+        _token(0x1c42, "Del Bob ");
+        _token(0x1cfe, "Paste Bob ");
+        _token(0x1d12, "Paste Icon ");
+        _token(0x1d28, "Make Mask ");
+        _token(0x1d38, "Make Mask ");
+        _token(0x1d4e, "No Mask ");
+        _token(0x1d90, "Hot Spot ");
+        _token(0x1dae, "Priority On");
+        _token(0x1dc0, "Priority Off");
+        _token(0x1dd2, "Hide On");
+        _token(0x1de0, "Hide");
+        _token(0x1dea, "Show On ");
+        _token(0x1df8, "Show ");
+        _token(0x1e02, "Change Mouse ");
+        _token(0x1e16, "X Mouse");
+        _token(0x1e24, "Y Mouse");
+        _token(0x1e32, "Mouse Key");
+        _token(0x1e42, "Mouse Click");
+        _token(0x1e6e, "Limit Mouse ");
+        _token(0x1f94, "Channel ");
+        _token(0x1fa2, "Amreg");
+        _token(0x1fbc, "Amal On ");
+        _token(0x1fca, "Amal On ");
+        _token(0x1fd2, "Amal Off ");
+        _token(0x1fe2, "Amal Off ");
+        _token(0x1fea, "Amal Freeze ");
+        _token(0x1ffc, "Amal Freeze ");
+        _token(0x2012, "Amal ");
+        _token(0x20f2, "Reserve As Work ");
+        _token(0x215e, "Erase");
+        _token(0x21ca, "Poke ");
+        _token(0x21d8, "Loke ");
+        _token(0x21e6, "Peek");
+        _token(0x21f2, "Deek");
+        _token(0x21fe, "Leek");
+        _token(0x2416, "Priority Reverse Off");
+        _token(0x2476, "Hrev");
+        _token(0x24aa, "Amos To Front");
+        _token(0x24e0, "Amos Lock");
+        _token(0x26d8, "Erase All");
+        _token(0x28a0, "Poke$ ");
+        _token(0x28ae, "Peek$");
+        _token(0x2952, "Assign ");
+        _token(0x2b3e, "Exec ");
+        _token(0x2bae, "Get Bob Palette");
+        _token(0x3d6, "Param$");
+        _token(0x4fe, "Set Buffer ");
+        _token(0xae2, "Screen Swap");
+        _token(0xb20, "Auto View Off");
+        _token(0xdc2, "Rainbow Del");
+        _token(0xf4a, "Text ");
+        _token(0xf7a, "Get Fonts");
+        _token(0xfb2, "Set Font ");
+        _token(0xff4c, " or ");
+        _token(0xff58, " and ");
+        _token(0xff66, "<>");
+        _token(0xff7a, "<=");
+        _token(0xff8e, ">=");
+        _token(0xff98, "=>");
+        _token(0xffa2, "=");
+        _token(0xffac, "<");
+        _token(0xffb6, ">");
+        _token(0xffc0, "+");
+        _token(0xffca, "-");
+        _token(0xffd4, " mod ");
+        _token(0xffe2, "*");
+        _token(0xffec, "/");
+        _token(0xfff6, "^");
+
+        // extensions [ext_number,offset]
+        _initMusicTokenMap();
+        _initExtension3TokenMap();
+        _initExtension2TokenMap();
+        _initCraftTokenMap();
+    }
+
+    /**
+     * Extension 1: Music
+     */
+    private static void _initMusicTokenMap()
+    {
+        _extension(0x010012, "Vumeter");
+        _extension(0x01002c, "Music Off");
+        _extension(0x01003c, "Music Stop");
+        _extension(0x010058, "Music ");
+        _extension(0x010074, "Boom");
+        _extension(0x01008a, "Sam Bank");
+        _extension(0x0100b4, "Sam Loop Off");
+        _extension(0x0100ee, "Sam Play");
+        _extension(0x0100f8, "Sam Play ");
+        _extension(0x010144, "Play ");
+        _extension(0x010196, "Mvolume ");
+        _extension(0x0101ca, "Led On");
+        _extension(0x0101d6, "Led Off");
+        _extension(0x010246, "Sam Stop");
+        _extension(0x01025e, "Track Stop");
+        _extension(0x01026e, "Track Loop On");
+        _extension(0x010296, "Track Play");
+        _extension(0x0102ba, "Track Load");
+        _extension(0x0102a8, "Track Play");
+    }
+
+    /**
+     * Extension 2: ??
+     */
+    private static void _initExtension2TokenMap()
+    {
+        _extension(0x020056, "Unpack ");
+    }
+
+    /**
+     * Extension 3: ??
+     */
+    private static void _initExtension3TokenMap()
+    {
+        _extension(0x030028, "Request Wb");
+    }
+
+    /**
+     * Extensions 18, 19: Craft, MUSICraft
+     */
+    private static void _initCraftTokenMap()
+    {
+        _extension(0x130028, "St Play ");
+        _extension(0x130030, "St Stop");
+    }
+}
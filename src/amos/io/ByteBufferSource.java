@@ -0,0 +1,153 @@
+// Copyright (C) 2012 David Gavilan Ruiz
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package amos.io ;
+
+import java.io.File ;
+import java.io.EOFException ;
+import java.io.RandomAccessFile ;
+import java.nio.ByteBuffer ;
+import java.nio.ByteOrder ;
+import java.nio.channels.FileChannel ;
+
+/**
+ * AMOSByteSource backed by a ByteBuffer, usually a memory-mapped file.
+ * All reads are absolute reads on the buffer, so there are no system calls
+ * once the file is mapped.
+ */
+public class ByteBufferSource implements AMOSByteSource
+{
+    ByteBuffer m_buffer ;
+    int        m_position ;
+
+    public ByteBufferSource(ByteBuffer buffer)
+    {
+        m_buffer = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+        m_position = 0;
+    }
+
+    public ByteBufferSource(byte[] data)
+    {
+        this(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Maps the whole file into memory (read only)
+     */
+    public static ByteBufferSource map(File file)
+        throws java.io.FileNotFoundException, java.io.IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw( new amos.io.UnsupportedFormat("File too big ("+size+" bytes)") );
+            }
+            // the mapping stays valid after the channel is closed
+            return new ByteBufferSource(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        } finally {
+            raf.close();
+        }
+    }
+
+    public int readUnsignedByte() throws java.io.IOException
+    {
+        _require(1);
+        int value = 0xff & m_buffer.get(m_position);
+        m_position += 1;
+        return value;
+    }
+
+    public int readUnsignedWord() throws java.io.IOException
+    {
+        _require(2);
+        int value = 0xffff & m_buffer.getShort(m_position);
+        m_position += 2;
+        return value;
+    }
+
+    public int readInt() throws java.io.IOException
+    {
+        _require(4);
+        int value = m_buffer.getInt(m_position);
+        m_position += 4;
+        return value;
+    }
+
+    public void readFully(byte[] buffer, int offset, int length) throws java.io.IOException
+    {
+        _require(length);
+        ByteBuffer view = m_buffer.duplicate();
+        view.position(m_position);
+        view.get(buffer, offset, length);
+        m_position += length;
+    }
+
+    public ByteBuffer readBuffer(int length) throws java.io.IOException
+    {
+        _require(length);
+        ByteBuffer view = m_buffer.asReadOnlyBuffer();
+        view.position(m_position);
+        view.limit(m_position + length);
+        m_position += length;
+        return view.slice().order(ByteOrder.BIG_ENDIAN);
+    }
+
+    public void skip(long numBytes) throws java.io.IOException
+    {
+        _require(numBytes);
+        m_position += (int)numBytes;
+    }
+
+    /**
+     * Moves to an absolute position
+     */
+    public void seek(long position) throws java.io.IOException
+    {
+        if (position < 0 || position > m_buffer.limit()) {
+            throw( new EOFException("Can't seek to offset "+position+" of "+m_buffer.limit()) );
+        }
+        m_position = (int)position;
+    }
+
+    /**
+     * New source sharing the same data, with its own position
+     */
+    public ByteBufferSource duplicate()
+    {
+        ByteBufferSource source = new ByteBufferSource(m_buffer);
+        source.m_position = m_position;
+        return source;
+    }
+
+    public long position()
+    {
+        return m_position;
+    }
+
+    public long size()
+    {
+        return m_buffer.limit();
+    }
+
+    public void close()
+    {
+        // nothing to release; the mapping is freed by the garbage collector
+    }
+
+    /**
+     * Makes sure there are enough bytes left, so short reads are not silently ignored
+     */
+    private void _require(long numBytes) throws EOFException
+    {
+        if (numBytes < 0 || m_position + numBytes > m_buffer.limit()) {
+            throw( new EOFException("Unexpected end of file at offset "+m_position+" (needed "+numBytes+" bytes)") );
+        }
+    }
+}
@@ -0,0 +1,96 @@
+// Copyright (C) 2012 David Gavilan Ruiz
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package amos.io ;
+
+import java.io.InputStream ;
+import java.io.BufferedInputStream ;
+import java.io.DataInputStream ;
+import java.io.EOFException ;
+
+/**
+ * AMOSByteSource for streams that can't be mapped, e.g. standard input.
+ * Reads are buffered, and short reads throw java.io.EOFException.
+ */
+public class StreamByteSource implements AMOSByteSource
+{
+    DataInputStream m_stream ;
+    long            m_position ;
+
+    public StreamByteSource(InputStream stream)
+    {
+        m_stream = new DataInputStream(new BufferedInputStream(stream));
+        m_position = 0;
+    }
+
+    public int readUnsignedByte() throws java.io.IOException
+    {
+        int value = m_stream.readUnsignedByte();
+        m_position += 1;
+        return value;
+    }
+
+    public int readUnsignedWord() throws java.io.IOException
+    {
+        int value = m_stream.readUnsignedShort();
+        m_position += 2;
+        return value;
+    }
+
+    public int readInt() throws java.io.IOException
+    {
+        int value = m_stream.readInt();
+        m_position += 4;
+        return value;
+    }
+
+    public void readFully(byte[] buffer, int offset, int length) throws java.io.IOException
+    {
+        m_stream.readFully(buffer, offset, length);
+        m_position += length;
+    }
+
+    public java.nio.ByteBuffer readBuffer(int length) throws java.io.IOException
+    {
+        byte[] data = new byte[length];
+        readFully(data, 0, length);
+        return java.nio.ByteBuffer.wrap(data).asReadOnlyBuffer();
+    }
+
+    public void skip(long numBytes) throws java.io.IOException
+    {
+        long remaining = numBytes;
+        while (remaining > 0) {
+            long skipped = m_stream.skip(remaining);
+            if (skipped <= 0) {
+                // skip() may return 0 before the end, so check with a read
+                if (m_stream.read() < 0) {
+                    throw( new EOFException("Unexpected end of file at offset "+m_position) );
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+            m_position += skipped;
+        }
+    }
+
+    public long position()
+    {
+        return m_position;
+    }
+
+    public long size()
+    {
+        return -1;
+    }
+
+    public void close() throws java.io.IOException
+    {
+        m_stream.close();
+    }
+}
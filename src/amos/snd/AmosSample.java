@@ -0,0 +1,58 @@
+// Copyright (C) 2012 David Gavilan Ruiz
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package amos.snd;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A sample of a SampleBank: 8-bit signed PCM, mono.
+ * The data stays in the bank, usually a mapped file, until it's written.
+ */
+public class AmosSample {
+
+    String m_name;
+    int m_frequency;
+    ByteBuffer m_data;
+
+    /**
+     * @param frequency sample rate in Hz
+     * @param data signed bytes, read with absolute reads from index 0
+     */
+    public AmosSample(String name, int frequency, ByteBuffer data) {
+        m_name = name;
+        m_frequency = frequency;
+        m_data = data;
+    }
+
+    public String getName() {
+        return m_name;
+    }
+
+    public int getFrequency() {
+        return m_frequency;
+    }
+
+    /**
+     * Length in bytes, i.e. in samples
+     */
+    public int getLength() {
+        return m_data.limit();
+    }
+
+    /**
+     * The signed sample data, read-only
+     */
+    public ByteBuffer getData() {
+        return m_data.asReadOnlyBuffer();
+    }
+
+    public String toString() {
+        return m_name+" "+m_frequency+"Hz "+getLength()+" bytes";
+    }
+}
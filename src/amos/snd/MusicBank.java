@@ -0,0 +1,177 @@
+// Copyright (C) 2012 David Gavilan Ruiz
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package amos.snd;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * The tables of an AMOS Music bank, as played by the Music extension.
+ * The bank starts with the offsets of its 3 sections: instruments, songs and
+ * patterns. Instruments point to their sample data; songs have a playlist of
+ * patterns for each of the 4 voices; patterns have the notes of each voice.
+ * Only the tables are read; the sample and note data stay in the bank.
+ * @see http://www.exotica.org.uk/wiki/AMOS_Music_Bank_format
+ */
+public class MusicBank {
+
+    static final int NUM_VOICES = 4;
+    static final int INSTRUMENT_SIZE = 32;
+
+    /**
+     * An instrument: a sample with its loop and volume
+     */
+    public static class Instrument {
+        String m_name;
+        int m_sampleOffset; // from the instruments section
+        int m_repeatOffset;
+        int m_length; // in words
+        int m_repeatLength;
+        int m_volume;
+
+        public String getName() {
+            return m_name;
+        }
+
+        /**
+         * Length of the sample, in bytes
+         */
+        public int getLength() {
+            return 2 * m_length;
+        }
+
+        /**
+         * Length of the loop, in bytes; 2 or less for no loop
+         */
+        public int getRepeatLength() {
+            return 2 * m_repeatLength;
+        }
+
+        public int getVolume() {
+            return m_volume;
+        }
+
+        public String toString() {
+            return m_name+" "+getLength()+" bytes, volume "+m_volume;
+        }
+    }
+
+    /**
+     * A song: its name, tempo and the offset of the playlist of each voice
+     */
+    public static class Song {
+        String m_name;
+        int m_tempo;
+        int[] m_playlists = new int[NUM_VOICES]; // from the song
+
+        public String getName() {
+            return m_name;
+        }
+
+        public int getTempo() {
+            return m_tempo;
+        }
+
+        public String toString() {
+            return m_name+", tempo "+m_tempo;
+        }
+    }
+
+    List<Instrument> m_instruments = new ArrayList<Instrument>();
+    List<Song> m_songs = new ArrayList<Song>();
+    int m_numPatterns;
+
+    /**
+     * Reads the tables of the bank
+     * @param bank data of the memory bank, after its name; it isn't copied
+     */
+    public MusicBank(ByteBuffer bank) throws java.io.StreamCorruptedException {
+        bank = bank.slice();
+        int instruments = _offset(bank, 0, 0);
+        int songs = _offset(bank, 0, 4);
+        int patterns = _offset(bank, 0, 8);
+
+        int numInstruments = _word(bank, instruments);
+        for (int i = 0; i < numInstruments; ++i) {
+            int entry = instruments + 2 + i * INSTRUMENT_SIZE;
+            _check(bank, entry + INSTRUMENT_SIZE);
+            Instrument instrument = new Instrument();
+            instrument.m_sampleOffset = bank.getInt(entry);
+            instrument.m_repeatOffset = bank.getInt(entry + 4);
+            instrument.m_repeatLength = _word(bank, entry + 10);
+            instrument.m_volume = _word(bank, entry + 12);
+            instrument.m_length = _word(bank, entry + 14);
+            instrument.m_name = _text(bank, entry + 16, 16);
+            m_instruments.add(instrument);
+        }
+
+        int numSongs = _word(bank, songs);
+        for (int i = 0; i < numSongs; ++i) {
+            int start = _offset(bank, songs, songs + 2 + 4 * i);
+            _check(bank, start + 2 * NUM_VOICES + 4 + 16);
+            Song song = new Song();
+            for (int voice = 0; voice < NUM_VOICES; ++voice) {
+                song.m_playlists[voice] = _word(bank, start + 2 * voice);
+            }
+            song.m_tempo = _word(bank, start + 2 * NUM_VOICES);
+            song.m_name = _text(bank, start + 2 * NUM_VOICES + 4, 16);
+            m_songs.add(song);
+        }
+
+        m_numPatterns = _word(bank, patterns);
+        _check(bank, patterns + 2 + (long)m_numPatterns * 2 * NUM_VOICES);
+    }
+
+    public List<Instrument> getInstruments() {
+        return Collections.unmodifiableList(m_instruments);
+    }
+
+    public List<Song> getSongs() {
+        return Collections.unmodifiableList(m_songs);
+    }
+
+    public int getNumPatterns() {
+        return m_numPatterns;
+    }
+
+    public String toString() {
+        return m_instruments.size()+" instruments, "+m_songs.size()+" songs, "+m_numPatterns+" patterns";
+    }
+
+    /**
+     * Reads an offset from base, and checks it's in the bank
+     */
+    private static int _offset(ByteBuffer bank, int base, int position) throws java.io.StreamCorruptedException {
+        _check(bank, position + 4);
+        long offset = base + (0xFFFFFFFFL & bank.getInt(position));
+        _check(bank, offset + 2);
+        return (int)offset;
+    }
+
+    private static int _word(ByteBuffer bank, int position) throws java.io.StreamCorruptedException {
+        _check(bank, position + 2);
+        return 0xFFFF & bank.getShort(position);
+    }
+
+    private static String _text(ByteBuffer bank, int position, int length) {
+        byte[] text = new byte[length];
+        for (int i = 0; i < length; ++i) {
+            text[i] = bank.get(position + i);
+        }
+        return new String(text, java.nio.charset.StandardCharsets.ISO_8859_1).replace('\0', ' ').trim();
+    }
+
+    private static void _check(ByteBuffer bank, long end) throws java.io.StreamCorruptedException {
+        if (end > bank.limit()) {
+            throw( new java.io.StreamCorruptedException("Music bank table out of the bank") );
+        }
+    }
+}
@@ -0,0 +1,83 @@
+// Copyright (C) 2012 David Gavilan Ruiz
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package amos.snd;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * The samples of a Samples bank.
+ * The bank starts with the number of samples and the offset of each one, from
+ * the start of the bank. Each sample has an 8-character name, its frequency,
+ * its length in bytes and its data, padded to a whole word.
+ */
+public class SampleBank {
+
+    List<AmosSample> m_samples;
+
+    public SampleBank(int numSamples) {
+        m_samples = new ArrayList<AmosSample>(numSamples);
+    }
+
+    /**
+     * Reads the directory of the bank. The data of the samples isn't copied.
+     * @param bank data of the memory bank, after its name
+     */
+    public static SampleBank decode(ByteBuffer bank) throws java.io.StreamCorruptedException {
+        bank = bank.slice();
+        if (bank.limit() < 2) {
+            throw( new java.io.StreamCorruptedException("Samples bank too short") );
+        }
+        int numSamples = 0xFFFF & bank.getShort(0);
+        if (2 + 4 * numSamples > bank.limit()) {
+            throw( new java.io.StreamCorruptedException("Samples bank too short for "+numSamples+" samples") );
+        }
+        SampleBank samples = new SampleBank(numSamples);
+        for (int i = 0; i < numSamples; ++i) {
+            int offset = bank.getInt(2 + 4 * i);
+            if (offset < 0 || offset > bank.limit() - 14) {
+                throw( new java.io.StreamCorruptedException("Sample "+i+" out of the bank") );
+            }
+            byte[] name = new byte[8];
+            for (int j = 0; j < name.length; ++j) {
+                name[j] = bank.get(offset + j);
+            }
+            int frequency = 0xFFFF & bank.getShort(offset + 8);
+            int length = bank.getInt(offset + 10);
+            if (length < 0 || length > bank.limit() - offset - 14) {
+                throw( new java.io.StreamCorruptedException("Sample "+i+" doesn't fit in the bank") );
+            }
+            ByteBuffer data = bank.duplicate();
+            data.position(offset + 14);
+            data.limit(offset + 14 + length);
+            samples.addSample(new AmosSample(
+                new String(name, java.nio.charset.StandardCharsets.ISO_8859_1).trim(),
+                frequency, data.slice()));
+        }
+        return samples;
+    }
+
+    public void addSample(AmosSample sample) {
+        m_samples.add(sample);
+    }
+
+    public List<AmosSample> getSamples() {
+        return Collections.unmodifiableList(m_samples);
+    }
+
+    public AmosSample getSample(int index) {
+        return m_samples.get(index);
+    }
+
+    public int size() {
+        return m_samples.size();
+    }
+}
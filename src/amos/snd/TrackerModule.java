@@ -0,0 +1,161 @@
+// Copyright (C) 2012 David Gavilan Ruiz
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package amos.snd;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The module of a Tracker bank, which is a standard ProTracker module:
+ * a 20-byte title, 31 sample headers, the song positions, a signature
+ * such as "M.K." that tells the number of channels, the patterns and
+ * the sample data.
+ * @see http://www.eblong.com/zarf/blorb/mod-spec.txt
+ */
+public class TrackerModule {
+
+    static final int NUM_SAMPLES = 31;
+    static final int SAMPLE_HEADER_SIZE = 30;
+    static final int SONG_LENGTH_OFFSET = 950;
+    static final int POSITIONS_OFFSET = 952;
+    static final int SIGNATURE_OFFSET = 1080;
+    static final int HEADER_SIZE = 1084;
+    // bytes per channel in a pattern: 64 rows of 4-byte notes
+    static final int PATTERN_CHANNEL_SIZE = 64 * 4;
+    static final int COPY_SIZE = 64 * 1024;
+
+    ByteBuffer m_data;
+    String m_title;
+    String m_signature;
+    int m_numChannels;
+    int m_numPatterns;
+    int m_size;
+    boolean m_isTruncated;
+
+    /**
+     * Checks the module and works out its size from its header
+     * @param bank data of the memory bank, after its name; it isn't copied
+     */
+    public TrackerModule(ByteBuffer bank) throws java.io.StreamCorruptedException {
+        m_data = bank.slice();
+        if (m_data.limit() < HEADER_SIZE) {
+            throw( new java.io.StreamCorruptedException("Tracker bank too short for a module") );
+        }
+        m_title = _ascii(0, 20).trim();
+        m_signature = _ascii(SIGNATURE_OFFSET, 4);
+        m_numChannels = _getNumChannels(m_signature);
+        if (m_numChannels == 0) {
+            throw( new java.io.StreamCorruptedException("Unknown module signature: "+m_signature) );
+        }
+        int songLength = 0xff & m_data.get(SONG_LENGTH_OFFSET);
+        if (songLength < 1 || songLength > 128) {
+            throw( new java.io.StreamCorruptedException("Wrong song length: "+songLength) );
+        }
+        // all the 128 positions count, even the ones after the song length
+        for (int i = 0; i < 128; ++i) {
+            m_numPatterns = Math.max(m_numPatterns, 1 + (0xff & m_data.get(POSITIONS_OFFSET + i)));
+        }
+        long size = HEADER_SIZE + (long)m_numPatterns * m_numChannels * PATTERN_CHANNEL_SIZE;
+        if (size > m_data.limit()) {
+            throw( new java.io.StreamCorruptedException("Tracker bank too short for "+m_numPatterns+" patterns") );
+        }
+        for (int i = 0; i < NUM_SAMPLES; ++i) {
+            // length in words, after the 22-byte name
+            size += 2L * (0xFFFF & m_data.getShort(20 + i * SAMPLE_HEADER_SIZE + 22));
+        }
+        // some modules lose the end of the last sample; keep what there is
+        m_isTruncated = size > m_data.limit();
+        m_size = (int)Math.min(size, m_data.limit());
+    }
+
+    public String getTitle() {
+        return m_title;
+    }
+
+    /**
+     * Signature of the format, e.g. "M.K."
+     */
+    public String getSignature() {
+        return m_signature;
+    }
+
+    public int getNumChannels() {
+        return m_numChannels;
+    }
+
+    public int getNumPatterns() {
+        return m_numPatterns;
+    }
+
+    /**
+     * Size of the module, without the padding at the end of the bank
+     */
+    public int getSize() {
+        return m_size;
+    }
+
+    /**
+     * True if the bank ends before the last sample does
+     */
+    public boolean isTruncated() {
+        return m_isTruncated;
+    }
+
+    /**
+     * Writes the module as a .mod file, copying it from the bank a few KB at a time
+     */
+    public void write(File file) throws java.io.IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            ByteBuffer data = m_data.duplicate();
+            for (int position = 0; position < m_size; position += COPY_SIZE) {
+                data.limit(Math.min(position + COPY_SIZE, m_size));
+                data.position(position);
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    public String toString() {
+        return "\""+m_title+"\" "+m_signature+", "+m_numChannels+" channels, "+m_numPatterns+" patterns, "+m_size+" bytes"
+            +(m_isTruncated ? " (truncated)" : "");
+    }
+
+    private String _ascii(int offset, int length) {
+        byte[] text = new byte[length];
+        for (int i = 0; i < length; ++i) {
+            text[i] = m_data.get(offset + i);
+        }
+        return new String(text, java.nio.charset.StandardCharsets.ISO_8859_1).replace('\0', ' ');
+    }
+
+    private static int _getNumChannels(String signature) {
+        if (signature.equals("M.K.") || signature.equals("M!K!") || signature.equals("FLT4") || signature.equals("4CHN")) {
+            return 4;
+        }
+        if (signature.equals("FLT8")) {
+            return 8;
+        }
+        // "6CHN", "8CHN"... and "10CH", "16CH"...
+        if (signature.endsWith("CHN") && Character.isDigit(signature.charAt(0))) {
+            return signature.charAt(0) - '0';
+        }
+        if (signature.endsWith("CH") && Character.isDigit(signature.charAt(0)) && Character.isDigit(signature.charAt(1))) {
+            return Integer.parseInt(signature.substring(0, 2));
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,85 @@
+// Copyright (C) 2012 David Gavilan Ruiz
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package amos.snd;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes samples as WAV files, 8-bit mono PCM.
+ * WAV 8-bit samples are unsigned, so the data goes through a small buffer
+ * where the sign bit is flipped; the sample is never copied as a whole.
+ */
+public class WavWriter {
+
+    static final int BUFFER_SIZE = 8192;
+    // some samples have no frequency; this is the usual one for a C-2 on the Amiga
+    static final int DEFAULT_FREQUENCY = 8363;
+
+    public static void write(AmosSample sample, File file) throws java.io.IOException {
+        ByteBuffer data = sample.getData();
+        int length = data.limit();
+        int frequency = (sample.getFrequency() > 0) ? sample.getFrequency() : DEFAULT_FREQUENCY;
+        byte[] name = sample.getName().getBytes(java.nio.charset.StandardCharsets.ISO_8859_1);
+        // chunks are padded to a whole word; INAM includes its NUL
+        int nameSize = (name.length + 2) & ~1;
+        int listSize = 4 + 8 + nameSize;
+        int dataSize = (length + 1) & ~1;
+        ByteBuffer header = ByteBuffer.allocate(12 + 24 + 8 + listSize + 8).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(_ascii("RIFF")).putInt(4 + 24 + 8 + listSize + 8 + dataSize).put(_ascii("WAVE"));
+        header.put(_ascii("fmt ")).putInt(16);
+        header.putShort((short)1); // PCM
+        header.putShort((short)1); // mono
+        header.putInt(frequency);
+        header.putInt(frequency); // bytes per second
+        header.putShort((short)1); // block align
+        header.putShort((short)8); // bits per sample
+        header.put(_ascii("LIST")).putInt(listSize).put(_ascii("INFO"));
+        header.put(_ascii("INAM")).putInt(nameSize).put(name);
+        for (int i = name.length; i < nameSize; ++i) {
+            header.put((byte)0);
+        }
+        header.put(_ascii("data")).putInt(length);
+        header.flip();
+
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            _writeFully(channel, header);
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            int position = 0;
+            while (position < dataSize) {
+                buffer.clear();
+                int end = Math.min(position + BUFFER_SIZE, dataSize);
+                for (; position < end; ++position) {
+                    // the padding byte is silence
+                    byte value = (position < length) ? data.get(position) : 0;
+                    buffer.put((byte)(value ^ 0x80));
+                }
+                buffer.flip();
+                _writeFully(channel, buffer);
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static void _writeFully(FileChannel channel, ByteBuffer buffer) throws java.io.IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static byte[] _ascii(String id) {
+        return id.getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+    }
+}
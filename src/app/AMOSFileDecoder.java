@@ -9,137 +9,552 @@
 package app ;
 
 import java.io.File ;
+import java.io.PrintStream ;
+import java.io.Writer ;
+import java.io.BufferedWriter ;
+import java.io.OutputStreamWriter ;
 import java.awt.image.BufferedImage;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Iterator;
-import javax.imageio.ImageIO;
+import java.util.concurrent.Future;
 import amos.io.* ;
+import amos.img.AmosImage ;
+import amos.img.SpriteBank ;
+import amos.snd.AmosSample ;
+import amos.snd.SampleBank ;
+import amos.snd.TrackerModule ;
+import amos.snd.WavWriter ;
 
 public class AMOSFileDecoder {
 
     public static void main(String args[]) {
         // default arguments
         String sourceFile = "";
-        boolean isVerbose = false;
-        boolean isSourceOnly = false;
-        String imageFolder = "";
-        String dataFolder = "";
+        DecoderOptions options = new DecoderOptions();
+        String batchFolder = "";
+        List<String> inputs = new ArrayList<String>();
+        List<String> fileLists = new ArrayList<String>();
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        int numEncoders = Runtime.getRuntime().availableProcessors();
+        boolean isWrongOption = false;
         // parse arguments
         int argIndex = 0;
         while(argIndex < args.length) {
             if (args[argIndex].equals("--sourceonly")) {
-                isSourceOnly = true ;
+                options.m_isSourceOnly = true ;
+            } else if (args[argIndex].equals("--banksonly")) {
+                options.m_isBanksOnly = true ;
             } else if (args[argIndex].equals("--verbose") || args[argIndex].equals("-v")) {
-                isVerbose = true;
+                options.m_isVerbose = true;
+            } else if (args[argIndex].equals("--atlas")) {
+                options.m_isAtlas = true ;
+            } else if (args[argIndex].equals("--incremental")) {
+                options.m_isIncremental = true ;
+            } else if (args[argIndex].equals("--parallel")) {
+                options.m_sourcePool = java.util.concurrent.ForkJoinPool.commonPool();
+            } else if (args[argIndex].equals("--lines")) {
+                if (argIndex+1<args.length) {
+                    String[] range = args[++argIndex].split("-", -1);
+                    try {
+                        options.m_firstLine = Integer.parseInt(range[0]);
+                        options.m_lastLine = (range.length > 1) ? Integer.parseInt(range[1]) : options.m_firstLine;
+                    } catch (NumberFormatException exc) {
+                        options.m_firstLine = -1; // wrong arguments
+                    }
+                }
+            } else if (args[argIndex].equals("--tolerant")) {
+                options.m_isTolerant = true ;
+            } else if (args[argIndex].equals("--resume")) {
+                options.m_isResumable = true ;
+            } else if (args[argIndex].equals("--symbols")) {
+                options.m_symbolTable = new AMOSSymbolTable();
             } else if (args[argIndex].equals("--imagefolder")) {
                 if (argIndex+1<args.length) {
-                    imageFolder = args[++argIndex];
+                    options.m_imageFolder = args[++argIndex];
                 }
             } else if (args[argIndex].equals("--datafolder")) {
                 if (argIndex+1<args.length) {
-                    dataFolder = args[++argIndex];
+                    options.m_dataFolder = args[++argIndex];
+                }
+            } else if (args[argIndex].equals("--cache")) {
+                if (argIndex+1<args.length) {
+                    options.m_sourceCache = new SourceCache(new File(args[++argIndex]));
+                }
+            } else if (args[argIndex].equals("--store")) {
+                if (argIndex+1<args.length) {
+                    options.m_contentStore = new ContentStore(new File(args[++argIndex]));
+                }
+            } else if (args[argIndex].equals("--batch")) {
+                if (argIndex+1<args.length) {
+                    batchFolder = args[++argIndex];
+                }
+            } else if (args[argIndex].equals("--filelist")) {
+                if (argIndex+1<args.length) {
+                    fileLists.add(args[++argIndex]);
+                }
+            } else if (args[argIndex].equals("--threads")) {
+                if (argIndex+1<args.length) {
+                    try {
+                        numThreads = Integer.parseInt(args[++argIndex]);
+                    } catch (NumberFormatException exc) {
+                        numThreads = 0; // wrong arguments
+                    }
+                }
+            } else if (args[argIndex].equals("--encoders")) {
+                if (argIndex+1<args.length) {
+                    try {
+                        numEncoders = Integer.parseInt(args[++argIndex]);
+                    } catch (NumberFormatException exc) {
+                        numEncoders = -1; // wrong arguments
+                    }
                 }
-            } else if (argIndex!=args.length-1) {
-                // wrong arguments
-                argIndex = args.length-1;
+            } else if (args[argIndex].startsWith("-")) {
+                System.err.println("Unknown option: "+args[argIndex]);
+                isWrongOption = true;
             } else {
-                sourceFile = args[argIndex];
+                inputs.add(args[argIndex]);
             }
             ++argIndex;
         }
+        if (!inputs.isEmpty()) {
+            // in single file mode, only the last file counts
+            sourceFile = inputs.get(inputs.size()-1);
+        }
         
-        if (sourceFile.isEmpty()) {
+        if (isWrongOption) {
             printHelp();
-        } else {
+            System.exit(1);
+        }
+        if (numEncoders < 0 || (options.m_isSourceOnly && options.m_isBanksOnly) || options.m_firstLine < 0 || options.m_lastLine < options.m_firstLine || (!batchFolder.isEmpty() && ((inputs.isEmpty() && fileLists.isEmpty()) || numThreads < 1))) {
+            printHelp();
+            return;
+        }
+        if (batchFolder.isEmpty() && sourceFile.isEmpty()) {
+            printHelp();
+            return;
+        }
+        // PNG files are encoded in the background, unless --encoders 0
+        ImageWriterPool imageWriter = null;
+        if (numEncoders > 0) {
+            imageWriter = new ImageWriterPool(numEncoders);
+            options.m_imageWriter = imageWriter;
+        }
+        boolean isSuccess = true;
+        try {
+            if (!batchFolder.isEmpty()) {
+                isSuccess = decodeBatch(batchFolder, inputs, fileLists, numThreads, options);
+            } else {
+                try {
+                    decode(new File(sourceFile), System.out, options);
+                } catch (java.io.FileNotFoundException exc) {
+                    System.err.println( "" + exc );
+                } catch (amos.io.UnsupportedFormat exc) {
+                    System.err.println( "" + exc );
+                } catch (java.io.StreamCorruptedException exc) {
+                    System.err.println( "" + exc );
+                } catch (java.io.IOException exc) {
+                    System.err.println( "" + exc );
+                }
+            }
+        } finally {
+            // also after a RuntimeException, so the images already queued are written
+            if (imageWriter != null) {
+                try {
+                    imageWriter.shutdown();
+                } catch (InterruptedException exc) {
+                    System.err.println( "" + exc );
+                }
+            }
+        }
+        if (!isSuccess) {
+            System.exit(1);
+        }
+    } // end main()
+    
+    /**
+     * Decodes a list of files and folders into the batch folder
+     * @return true if all the files were decoded
+     */
+    public static boolean decodeBatch(String batchFolder, List<String> inputs, List<String> fileLists, int numThreads, DecoderOptions options) {
+        BatchDecoder batch = new BatchDecoder(options, new File(batchFolder), numThreads);
+        try {
+            for (String input : inputs) {
+                batch.addInput(new File(input));
+            }
+            for (String fileList : fileLists) {
+                batch.addFileList(new File(fileList));
+            }
+            if (options.m_isVerbose) {
+                System.err.println("Decoding "+batch.getNumFiles()+" files...");
+            }
+            return batch.run();
+        } catch (java.io.IOException exc) {
+            System.err.println( "" + exc );
+        } catch (InterruptedException exc) {
+            System.err.println( "" + exc );
+        }
+        return false;
+    }
+    
+    /**
+     * Decodes a single AMOS file: source code goes to the given stream,
+     * and images and memory banks to the folders in the options.
+     */
+    public static void decode(File file, PrintStream out, DecoderOptions options) throws java.io.IOException {
+        if (options.m_firstLine > 0) {
+            decodeLines(file, out, options);
+            return;
+        }
+        if (options.m_isIncremental) {
+            IncrementalDecoder.decode(file, out, options);
+            return;
+        }
+        boolean isVerbose = options.m_isVerbose;
+        AMOSFileInputStream fileDecoder = new AMOSFileInputStream(file, isVerbose);
+        List<Future<Void>> pendingImages = new ArrayList<Future<Void>>();
+        try {
+            // Decode source code
+            if (options.m_isBanksOnly) {
+                fileDecoder.skipSourceCode();
+            } else if (options.m_isTolerant) {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(out));
+                boolean isComplete;
+                try {
+                    isComplete = new ResumableDecoder(file, fileDecoder, writer, options).decodeSource();
+                } finally {
+                    writer.flush();
+                }
+                if (!isComplete) {
+                    return; // truncated, there are no banks
+                }
+            } else if (options.m_sourcePool != null && options.m_symbolTable == null && options.m_sourceCache == null) {
+                ParallelSourceDecoder.decode(file, out, options.m_sourcePool, isVerbose);
+                fileDecoder.skipSourceCode();
+            } else {
+                decodeSource(file, fileDecoder, out, options);
+            }
+            
+            // in source only mode, the bytes of the banks are never read
+            if (!options.m_isSourceOnly) {
+                decodeBanks(fileDecoder, options, pendingImages);
+            }
+            // the images of this file must be on disk before returning
+            ImageWriterPool.waitFor(pendingImages);
+        } finally {
+            fileDecoder.close();
+        }
+    }
+    
+    /**
+     * Decodes only the lines of the source code in the options, using the line index
+     * to go straight to them. With a source cache, the index is kept there.
+     */
+    static void decodeLines(File file, PrintStream out, DecoderOptions options) throws java.io.IOException {
+        AMOSFile amosFile = new AMOSFile(file, options.m_isVerbose);
+        try {
+            AMOSSourceIndex index;
+            if (options.m_sourceCache != null) {
+                index = options.m_sourceCache.getSourceIndex(file, amosFile, options.m_isVerbose);
+            } else {
+                index = amosFile.getSourceIndex();
+            }
+            int lastLine = Math.min(options.m_lastLine, index.getNumLines());
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out));
+            AMOSSourcePrinter printer = new AMOSSourcePrinter(writer);
             try {
-                File file = new File( sourceFile );
-                AMOSFileInputStream fileDecoder = new AMOSFileInputStream(file, isVerbose);
-                
-                // Decode source code
-                while (!fileDecoder.isSourceCodeEnd()) {
-                    System.out.println( fileDecoder.readLine() );
-                }
-                
-                if (!isSourceOnly) {
-                    // Read memory banks
-                    int numBanks = fileDecoder.readNumBanks();
-                    if (isVerbose) {
-                        System.err.println("Decoding "+numBanks+" banks...");
-                    }
-                    
-                    // process banks
-                    for(int i=0;i<numBanks;i++) {
-                        AMOSBankType bankType = fileDecoder.readBankType();
-                        if (bankType == AMOSBankType.MEMORYBANK) { // subtype
-                            bankType = fileDecoder.readMemoryBankType();
-                        }
-                        switch(bankType) {
-                            case SPRITEBANK:
-                            {
-                                String format = "png";                                
-                                List<BufferedImage> imgList = fileDecoder.readImages();
-                                int count = 0;
-                                for (Iterator<BufferedImage> it = imgList.iterator(); it.hasNext(); ) {
-                                    count++;
-                                    BufferedImage img = it.next();
-                                    File imgfile = new File(imageFolder+String.format("Sprite_%03d.png",count));
-                                    ImageIO.write(img, format, imgfile);
-                                }
-                                break;
-                            }
-                            case ICONBANK:
-                            {
-                                String format = "png";                                
-                                List<BufferedImage> imgList = fileDecoder.readImages();
-                                int count = 0;
-                                for (Iterator<BufferedImage> it = imgList.iterator(); it.hasNext(); ) {
-                                    count++;
-                                    BufferedImage img = it.next();
-                                    File imgfile = new File(imageFolder+String.format("Icon_%03d.png",count));
-                                    ImageIO.write(img, format, imgfile);
-                                }
-                                break;
-                            }
-                            case PACKED_PICTURE:
-                            {
-                                String format = "png";
-                                BufferedImage img = fileDecoder.readPacPic();
-                                File imgFile = new File(dataFolder+String.format("PacPic_%02d.png",fileDecoder.getCurrentBankNumber()));
-                                ImageIO.write(img, format, imgFile);
-                                break;
-                            }
-                            default:
-                            case MEMORYBANK: // Generic memory bank
-                            {
-                                fileDecoder.readMemoryBankRaw();
-                                break;
-                            }
-                        }
+                amosFile.decodeRange(options.m_firstLine - 1, lastLine, printer);
+            } catch (java.io.StreamCorruptedException exc) {
+                throw( printer.lineError(exc) );
+            } finally {
+                writer.flush();
+            }
+        } finally {
+            amosFile.close();
+        }
+    }
+    
+    /**
+     * Decodes all the source code to the given stream
+     * @param fileDecoder stream of the file, at the beginning of the source code
+     */
+    static void decodeSource(File file, AMOSFileInputStream fileDecoder, PrintStream out, DecoderOptions options)
+        throws java.io.IOException
+    {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out));
+        AMOSSourcePrinter printer = new AMOSSourcePrinter(writer);
+        AMOSTokenHandler handler = printer;
+        AMOSSymbolCollector symbols = null;
+        if (options.m_symbolTable != null) {
+            symbols = new AMOSSymbolCollector(options.m_symbolTable, handler);
+            handler = symbols;
+        }
+        try {
+            if (options.m_sourceCache != null) {
+                options.m_sourceCache.decodeSource(file, fileDecoder, handler, options.m_isVerbose);
+            } else {
+                fileDecoder.getTokenReader().parse(handler);
+            }
+        } catch (java.io.StreamCorruptedException exc) {
+            throw( printer.lineError(exc) );
+        } finally {
+            // the lines before an error are still printed
+            writer.flush();
+        }
+        if (symbols != null) {
+            writeSymbols(symbols, new File(options.m_dataFolder+"Symbols.csv"));
+            if (options.m_isVerbose) {
+                System.err.println(symbols);
+            }
+        }
+    }
+    
+    /**
+     * Decodes all the banks
+     * @param fileDecoder stream of the file, right after the source code
+     */
+    static void decodeBanks(AMOSFileInputStream fileDecoder, DecoderOptions options, List<Future<Void>> pendingImages)
+        throws java.io.IOException
+    {
+        // Read memory banks
+        int numBanks = fileDecoder.readNumBanks();
+        if (options.m_isVerbose) {
+            System.err.println("Decoding "+numBanks+" banks...");
+        }
+        
+        // process banks
+        for(int i=0;i<numBanks;i++) {
+            decodeBank(fileDecoder, options, pendingImages, null);
+        }
+    }
+    
+    /**
+     * Decodes the next bank, starting with its type
+     * @param outputs if not null, the files written are added to it
+     */
+    static void decodeBank(AMOSFileInputStream fileDecoder, DecoderOptions options, List<Future<Void>> pendingImages, List<File> outputs)
+        throws java.io.IOException
+    {
+        String imageFolder = options.m_imageFolder;
+        String dataFolder = options.m_dataFolder;
+        if (outputs == null) {
+            outputs = new ArrayList<File>();
+        }
+        AMOSBankType bankType = fileDecoder.readBankType();
+        if (bankType == AMOSBankType.MEMORYBANK) { // subtype
+            bankType = fileDecoder.readMemoryBankType();
+        }
+        switch(bankType) {
+            case SPRITEBANK:
+            {
+                SpriteBank bank = fileDecoder.readSpriteBank();
+                if (options.m_isAtlas) {
+                    outputs.addAll(new SpriteAtlas(bank).write(imageFolder, "Sprites", options, pendingImages));
+                    break;
+                }
+                int count = 0;
+                for (AmosImage image : bank.getImages()) {
+                    count++;
+                    File imgfile = new File(imageFolder+String.format("Sprite_%03d.png",count));
+                    writeImage(image, imgfile, options, pendingImages);
+                    outputs.add(imgfile);
+                }
+                break;
+            }
+            case ICONBANK:
+            {
+                SpriteBank bank = fileDecoder.readSpriteBank();
+                if (options.m_isAtlas) {
+                    outputs.addAll(new SpriteAtlas(bank).write(imageFolder, "Icons", options, pendingImages));
+                    break;
+                }
+                int count = 0;
+                for (AmosImage image : bank.getImages()) {
+                    count++;
+                    File imgfile = new File(imageFolder+String.format("Icon_%03d.png",count));
+                    writeImage(image, imgfile, options, pendingImages);
+                    outputs.add(imgfile);
+                }
+                break;
+            }
+            case PACKED_PICTURE:
+            {
+                File imgFile = new File(dataFolder+String.format("PacPic_%02d.png",fileDecoder.getCurrentBankNumber()));
+                outputs.add(imgFile);
+                java.nio.ByteBuffer data = fileDecoder.readMemoryBankBuffer();
+                String key = null;
+                if (options.m_contentStore != null) {
+                    key = ContentStore.key("pacpic-v2", data, ".png"); // v2: EHB and HAM
+                    if (fetchImage(key, imgFile, options)) break;
+                }
+                writeImage(fileDecoder.decodePacPic(data), imgFile, options, pendingImages, key);
+                break;
+            }
+            case SAMPLES:
+            {
+                java.nio.ByteBuffer data = fileDecoder.readMemoryBankBuffer();
+                SampleBank bank;
+                try {
+                    bank = fileDecoder.decodeSampleBank(data);
+                } catch (java.io.StreamCorruptedException exc) {
+                    // the bank is kept as it is
+                    System.err.println("Samples bank "+fileDecoder.getCurrentBankNumber()+": "+exc.getMessage());
+                    File abkFile = new File(dataFolder+String.format("Samples_%02d.abk",fileDecoder.getCurrentBankNumber()));
+                    fileDecoder.writeBankFile(data, abkFile);
+                    outputs.add(abkFile);
+                    break;
+                }
+                int count = 0;
+                for (AmosSample sample : bank.getSamples()) {
+                    count++;
+                    File wavFile = new File(dataFolder+String.format("Sample_%02d_%03d.wav",fileDecoder.getCurrentBankNumber(),count));
+                    if (options.m_isVerbose) {
+                        System.err.println("sample("+count+")="+sample);
                     }
+                    WavWriter.write(sample, wavFile);
+                    outputs.add(wavFile);
                 }
-                
-            } catch (java.io.FileNotFoundException exc) {
-                System.err.println( "" + exc );
-            } catch (amos.io.UnsupportedFormat exc) {
-                System.err.println( "" + exc );
-            } catch (java.io.StreamCorruptedException exc) {
-                System.err.println( "" + exc );
-            } catch (java.io.IOException exc) {
-                System.err.println( "" + exc );
+                break;
+            }
+            case TRACKER:
+            {
+                java.nio.ByteBuffer data = fileDecoder.readMemoryBankBuffer();
+                TrackerModule module;
+                try {
+                    module = fileDecoder.decodeTrackerModule(data);
+                } catch (java.io.StreamCorruptedException exc) {
+                    // e.g. a 15-sample or another tracker's module; the bank is kept as it is
+                    System.err.println("Tracker bank "+fileDecoder.getCurrentBankNumber()+": "+exc.getMessage());
+                    File abkFile = new File(dataFolder+String.format("Tracker_%02d.abk",fileDecoder.getCurrentBankNumber()));
+                    fileDecoder.writeBankFile(data, abkFile);
+                    outputs.add(abkFile);
+                    break;
+                }
+                File modFile = new File(dataFolder+String.format("Tracker_%02d.mod",fileDecoder.getCurrentBankNumber()));
+                module.write(modFile);
+                outputs.add(modFile);
+                break;
+            }
+            case MUSIC:
+            {
+                File abkFile = new File(dataFolder+String.format("Music_%02d.abk",fileDecoder.getCurrentBankNumber()));
+                java.nio.ByteBuffer data = fileDecoder.readMemoryBankBuffer();
+                try {
+                    fileDecoder.decodeMusicBank(data);
+                } catch (java.io.StreamCorruptedException exc) {
+                    // the bank is kept anyway
+                    System.err.println("Music bank "+fileDecoder.getCurrentBankNumber()+": "+exc.getMessage());
+                }
+                fileDecoder.writeBankFile(data, abkFile);
+                outputs.add(abkFile);
+                break;
+            }
+            default:
+            case MEMORYBANK: // Generic memory bank
+            {
+                String name = String.format("Bank_%02d",fileDecoder.getCurrentBankNumber());
+                String bankName = fileDecoder.getCurrentBankName().trim().replaceAll("[^A-Za-z0-9._-]", "_");
+                if (!bankName.isEmpty()) {
+                    name += "_"+bankName;
+                }
+                File dataFile = new File(dataFolder+name+".bin");
+                File headerFile = new File(dataFolder+name+".txt");
+                fileDecoder.writeMemoryBank(dataFile, headerFile);
+                outputs.add(dataFile);
+                outputs.add(headerFile);
+                break;
             }
         }
-    } // end main()
+    }
+    
+    /**
+     * Writes the symbol statistics of a program as CSV
+     */
+    static void writeSymbols(AMOSSymbolCollector symbols, File file) throws java.io.IOException {
+        java.io.PrintWriter csv = new java.io.PrintWriter(new java.io.FileWriter(file));
+        try {
+            symbols.writeCSV(csv);
+        } finally {
+            csv.close();
+        }
+        if (csv.checkError()) {
+            throw( new java.io.IOException("Can't write "+file) );
+        }
+    }
+    
+    /**
+     * Writes an image as PNG, in the background if there's an ImageWriterPool
+     */
+    static void writeImage(BufferedImage img, File file, DecoderOptions options, List<Future<Void>> pending) throws java.io.IOException {
+        writeImage(img, file, options, pending, null);
+    }
+    
+    /**
+     * Writes an image as PNG, and adds it to the content store with the given key
+     * @param key null if the image is not to be stored
+     */
+    static void writeImage(BufferedImage img, File file, DecoderOptions options, List<Future<Void>> pending, String key) throws java.io.IOException {
+        ContentStore store = (key != null) ? options.m_contentStore : null;
+        if (options.m_imageWriter != null) {
+            pending.add(options.m_imageWriter.write(img, file, store, key));
+        } else {
+            ImageWriterPool.writeImage(img, file);
+            if (store != null) {
+                store.add(key, file);
+            }
+        }
+    }
+    
+    /**
+     * Writes a sprite or icon, or links it from the content store if it's there,
+     * in which case its pixels are never converted
+     */
+    static void writeImage(AmosImage image, File file, DecoderOptions options, List<Future<Void>> pending) throws java.io.IOException {
+        String key = null;
+        if (options.m_contentStore != null) {
+            key = ContentStore.imageKey(image);
+            if (fetchImage(key, file, options)) return;
+        }
+        writeImage(image.toBufferedImage(), file, options, pending, key);
+    }
     
+    /**
+     * Links a file from the content store
+     * @return false if it's not in the store
+     */
+    static boolean fetchImage(String key, File file, DecoderOptions options) throws java.io.IOException {
+        if (!options.m_contentStore.fetch(key, file)) {
+            return false;
+        }
+        if (options.m_isVerbose) {
+            System.err.println(file+": same as "+options.m_contentStore.getFile(key));
+        }
+        return true;
+    }
+
     /**
      * Prints help
      */
     public static void printHelp() {
         System.out.println( "Usage: AMOSFileDecoder [options] AMOS_SOURCE_FILE" );
+        System.out.println( "       AMOSFileDecoder [options] --batch OUTPUT_PATH [--threads N] [--filelist FILE] [FILES|FOLDERS...]" );
         System.out.println( "Options:" );
         System.out.println( "  -v | --verbose: outputs more information" );        
         System.out.println( "  --sourceonly: decode only the source code");
+        System.out.println( "  --banksonly: decode only the memory banks, skipping the source code");
         System.out.println( "  --imagefolder PATH: output images to PATH");
+        System.out.println( "  --atlas: pack the images of each bank into a few sheets, plus a CSV file with their positions and hot spots");
         System.out.println( "  --datafolder PATH: output memory banks to PATH");
+        System.out.println( "  --symbols: write the variables, procedures and labels of the program, and their number of uses, to Symbols.csv in the data folder");
+        System.out.println( "  --lines FROM-TO: only decode these lines of the source code, from 1, and no banks. With --cache, the line index is kept there");
+        System.out.println( "  --tolerant: skip corrupt lines of source code instead of stopping, and keep what can be decoded from truncated files");
+        System.out.println( "  --resume: in batch mode, skip the files decoded by a previous run, and go on decoding the source code of a file from its last checkpoint");
+        System.out.println( "  --parallel: decode the procedures of the source code on all the cores; ignored with --symbols or --cache");
+        System.out.println( "  --incremental: only decode the procedures and banks that changed since the last time, using Manifest_NAME.dat in the data folder");
+        System.out.println( "  --store PATH: keep the images in PATH, named after the hash of their data, and link them from there when the same data is found again");
+        System.out.println( "  --cache PATH: keep the decoded source code in PATH, and reuse it while the AMOS file doesn't change");
+        System.out.println( "  --batch PATH: decode all the given files and folders, writing one folder per file inside PATH");
+        System.out.println( "  --filelist FILE: in batch mode, also decode the files listed in FILE");
+        System.out.println( "  --threads N: in batch mode, decode N files at a time (default: number of processors)");
+        System.out.println( "  --encoders N: encode up to N PNG images at a time while decoding (default: number of processors, 0: no background encoding)");
     }
 }
\ No newline at end of file
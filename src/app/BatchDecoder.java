@@ -0,0 +1,274 @@
+// Copyright (C) 2012 David Gavilan Ruiz
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package app ;
+
+import java.io.File ;
+import java.io.FileReader ;
+import java.io.FileOutputStream ;
+import java.io.BufferedReader ;
+import java.io.BufferedOutputStream ;
+import java.io.FileWriter ;
+import java.io.PrintWriter ;
+import java.io.PrintStream ;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decodes many AMOS files on a pool of worker threads.
+ * Every input file gets its own output folder, mirroring the input tree:
+ *   INPUT/games/Foo.AMOS -> OUTPUT/games/Foo/Foo.pamos (+ images and banks)
+ * Files given one by one go to OUTPUT/Foo. If two files would share a folder,
+ * e.g. Game.AMOS from two different places, the second one goes to OUTPUT/Game_2.
+ * In resumable mode, finished files are listed in OUTPUT/Checkpoint.txt and skipped
+ * when the batch is run again, and the source code of each file goes on from its
+ * last checkpoint, see ResumableDecoder.
+ */
+public class BatchDecoder {
+
+    /**
+     * An input file and the folder where its outputs go
+     */
+    static class Entry {
+        File m_file;
+        File m_outputFolder;
+        Entry(File file, File outputFolder) {
+            m_file = file;
+            m_outputFolder = outputFolder;
+        }
+    }
+
+    DecoderOptions m_options;
+    File           m_outputFolder;
+    int            m_numThreads;
+    List<Entry>    m_entries;
+    Set<File>      m_inputFiles;
+    Set<String>    m_outputPaths; // lower case, for file systems that ignore case
+    List<String>   m_failures;
+    AtomicInteger  m_numDecoded;
+    AtomicLong     m_decodedBytes;
+    int            m_numSkipped;
+    PrintWriter    m_checkpoint; // in resumable mode
+
+    public BatchDecoder(DecoderOptions options, File outputFolder, int numThreads) {
+        m_options = options;
+        m_outputFolder = outputFolder;
+        m_numThreads = Math.max(1, numThreads);
+        m_entries = new ArrayList<Entry>();
+        m_inputFiles = new HashSet<File>();
+        m_outputPaths = new HashSet<String>();
+        m_failures = Collections.synchronizedList(new ArrayList<String>());
+        m_numDecoded = new AtomicInteger(0);
+        m_decodedBytes = new AtomicLong(0);
+        m_numSkipped = 0;
+    }
+
+    /**
+     * Adds a single AMOS file, or all the AMOS files inside a folder
+     */
+    public void addInput(File input) {
+        if (input.isDirectory()) {
+            _addFolder(input, m_outputFolder);
+        } else {
+            _add(input, new File(m_outputFolder, baseName(input)));
+        }
+    }
+
+    /**
+     * Adds the files listed in a text file, one path per line.
+     * Empty lines and lines starting with # are ignored.
+     */
+    public void addFileList(File listFile) throws java.io.IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(listFile));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                addInput(new File(line));
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    public int getNumFiles() {
+        return m_entries.size();
+    }
+
+    /**
+     * Decodes all the files and prints a summary.
+     * @return true if all the files were decoded without errors
+     */
+    public boolean run() throws InterruptedException, java.io.IOException {
+        long startTime = System.currentTimeMillis();
+        _checkOutputFolders();
+        Set<String> finished = new HashSet<String>();
+        if (m_options.m_isResumable) {
+            finished = _openCheckpoint(new File(m_outputFolder, "Checkpoint.txt"));
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(m_numThreads);
+        for (final Entry entry : m_entries) {
+            if (finished.contains(entry.m_file.getPath())) {
+                ++m_numSkipped;
+                continue;
+            }
+            pool.execute(new Runnable() {
+                public void run() {
+                    _decode(entry);
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        if (m_checkpoint != null) {
+            m_checkpoint.close();
+        }
+        long elapsed = System.currentTimeMillis() - startTime;
+
+        // summary
+        System.out.println("Decoded "+m_numDecoded.get()+" of "+m_entries.size()+" files ("
+            +m_decodedBytes.get()+" bytes) in "+(elapsed/1000.0)+" s using "+m_numThreads+" threads");
+        if (m_numSkipped > 0) {
+            System.out.println(m_numSkipped+" files were already decoded by a previous run");
+        }
+        if (m_options.m_symbolTable != null) {
+            System.out.println(m_options.m_symbolTable.size()+" different symbols in all the files");
+        }
+        if (!m_failures.isEmpty()) {
+            System.out.println(m_failures.size()+" files failed:");
+            for (String failure : m_failures) {
+                System.out.println("  "+failure);
+            }
+        }
+        return m_failures.isEmpty();
+    }
+
+    private void _decode(Entry entry) {
+        try {
+            if (!entry.m_outputFolder.isDirectory() && !entry.m_outputFolder.mkdirs()) {
+                throw( new java.io.IOException("Can't create folder "+entry.m_outputFolder) );
+            }
+            String folder = entry.m_outputFolder.getPath() + File.separator;
+            File sourceFile = new File(entry.m_outputFolder, baseName(entry.m_file)+".pamos");
+            if (m_options.m_isResumable) {
+                ResumableDecoder.decode(entry.m_file, sourceFile, m_options.withOutputFolder(folder));
+                _finished(entry.m_file);
+            } else {
+                PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(sourceFile)));
+                try {
+                    AMOSFileDecoder.decode(entry.m_file, out, m_options.withOutputFolder(folder));
+                } finally {
+                    out.close();
+                }
+            }
+            m_numDecoded.incrementAndGet();
+            m_decodedBytes.addAndGet(entry.m_file.length());
+        } catch (java.io.IOException exc) {
+            m_failures.add(entry.m_file.getPath()+": "+exc);
+        } catch (RuntimeException exc) {
+            // corrupt files shouldn't stop the whole batch
+            m_failures.add(entry.m_file.getPath()+": "+exc);
+        }
+    }
+
+    /**
+     * Reads the files finished by previous runs, and opens the checkpoint to add more
+     */
+    private Set<String> _openCheckpoint(File checkpointFile) throws java.io.IOException {
+        Set<String> finished = new HashSet<String>();
+        if (checkpointFile.isFile()) {
+            BufferedReader reader = new BufferedReader(new FileReader(checkpointFile));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    finished.add(line);
+                }
+            } finally {
+                reader.close();
+            }
+        } else if (!m_outputFolder.isDirectory() && !m_outputFolder.mkdirs()) {
+            throw( new java.io.IOException("Can't create folder "+m_outputFolder) );
+        }
+        m_checkpoint = new PrintWriter(new FileWriter(checkpointFile, true));
+        return finished;
+    }
+
+    /**
+     * Adds a file to the checkpoint, right away, so it's there if the batch is stopped
+     */
+    private synchronized void _finished(File file) throws java.io.IOException {
+        m_checkpoint.println(file.getPath());
+        m_checkpoint.flush();
+        if (m_checkpoint.checkError()) {
+            throw( new java.io.IOException("Can't write the checkpoint") );
+        }
+    }
+
+    /**
+     * Adds a file, unless it's already in the batch, with an output folder
+     * that no other file uses
+     */
+    private void _add(File file, File outputFolder) {
+        if (!m_inputFiles.add(file.getAbsoluteFile().toPath().normalize().toFile())) {
+            return; // e.g. in a folder and in a file list
+        }
+        File folder = outputFolder;
+        for (int i = 2; !m_outputPaths.add(_pathKey(folder)); ++i) {
+            folder = new File(outputFolder.getPath()+"_"+i);
+        }
+        m_entries.add(new Entry(file, folder));
+    }
+
+    /**
+     * Makes sure no two files write to the same folder, before anything is decoded
+     */
+    private void _checkOutputFolders() throws java.io.IOException {
+        Set<String> paths = new HashSet<String>();
+        for (Entry entry : m_entries) {
+            if (!paths.add(_pathKey(entry.m_outputFolder))) {
+                throw( new java.io.IOException("Two files would be decoded to "+entry.m_outputFolder) );
+            }
+        }
+    }
+
+    private static String _pathKey(File folder) {
+        return folder.getAbsoluteFile().toPath().normalize().toString().toLowerCase();
+    }
+
+    private void _addFolder(File folder, File outputFolder) {
+        File[] files = folder.listFiles();
+        if (files == null) return;
+        Arrays.sort(files);
+        for (File file : files) {
+            if (file.isDirectory()) {
+                _addFolder(file, new File(outputFolder, file.getName()));
+            } else if (file.getName().toLowerCase().endsWith(".amos")) {
+                _add(file, new File(outputFolder, baseName(file)));
+            }
+        }
+    }
+
+    /**
+     * File name without extension
+     */
+    static String baseName(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return (dot > 0) ? name.substring(0, dot) : name;
+    }
+}
@@ -0,0 +1,174 @@
+// Copyright (C) 2012 David Gavilan Ruiz
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package app ;
+
+import java.io.File ;
+import java.awt.image.IndexColorModel;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import amos.img.AmosImage;
+import amos.img.SpriteBank;
+
+/**
+ * Folder of output files named after the hash of the bank data they were decoded from.
+ * When the same data is found again, the stored file is linked to the output folder
+ * instead of decoding and encoding it again.
+ *
+ * Outputs are hard links to the stored files when the file system allows it,
+ * so they take no extra space; otherwise they are copies.
+ * It can be shared by several threads.
+ */
+public class ContentStore {
+
+    // hashed into the keys of sprites, icons and atlas sheets, so images
+    // stored by older versions are not used; 2: EHB palette for 6-plane images
+    static final String IMAGE_KEY_VERSION = "image-v2";
+
+    File m_folder;
+
+    public ContentStore(File folder) {
+        m_folder = folder;
+    }
+
+    /**
+     * Stored file for the given key, e.g. "a1b2...png"
+     */
+    public File getFile(String key) {
+        // 256 subfolders, so folders don't grow too much
+        return new File(new File(m_folder, key.substring(0, 2)), key);
+    }
+
+    /**
+     * If the key is in the store, links or copies its file to target
+     * @return false if the key is not in the store
+     */
+    public boolean fetch(String key, File target) throws java.io.IOException {
+        File stored = getFile(key);
+        if (!stored.isFile()) {
+            return false;
+        }
+        Files.deleteIfExists(target.toPath());
+        try {
+            Files.createLink(target.toPath(), stored.toPath());
+        } catch (java.io.IOException exc) {
+            // e.g. different file systems
+            Files.copy(stored.toPath(), target.toPath());
+        } catch (UnsupportedOperationException exc) {
+            Files.copy(stored.toPath(), target.toPath());
+        }
+        return true;
+    }
+
+    /**
+     * Adds an output file that was just written, if the key isn't in the store yet
+     */
+    public void add(String key, File file) throws java.io.IOException {
+        File stored = getFile(key);
+        if (stored.isFile()) {
+            return;
+        }
+        File folder = stored.getParentFile();
+        if (!folder.isDirectory() && !folder.mkdirs() && !folder.isDirectory()) {
+            throw( new java.io.IOException("Can't create "+folder) );
+        }
+        try {
+            Files.createLink(stored.toPath(), file.toPath());
+            return;
+        } catch (FileAlreadyExistsException exc) {
+            return; // added by another thread
+        } catch (java.io.IOException exc) {
+            // copy below
+        } catch (UnsupportedOperationException exc) {
+            // copy below
+        }
+        // copy to a temporary file first, so other threads never see half a file
+        File tmpFile = File.createTempFile("store", ".tmp", folder);
+        try {
+            Files.copy(file.toPath(), tmpFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmpFile.toPath(), stored.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * Key of a PNG file decoded from the given bank data
+     * @param kind what is decoded from the data, e.g. "pacpic"
+     */
+    public static String key(String kind, ByteBuffer data, String extension) {
+        MessageDigest digest = _newDigest();
+        digest.update(kind.getBytes(java.nio.charset.StandardCharsets.US_ASCII));
+        digest.update(data.duplicate());
+        return toHex(digest.digest())+extension;
+    }
+
+    /**
+     * Key of a sprite or icon, from its planar data, size and palette
+     */
+    public static String imageKey(AmosImage image) {
+        MessageDigest digest = _newDigest();
+        digest.update(IMAGE_KEY_VERSION.getBytes(java.nio.charset.StandardCharsets.US_ASCII));
+        _update(digest, image);
+        _update(digest, image.getBank().getPalette());
+        return toHex(digest.digest())+".png";
+    }
+
+    /**
+     * Key of all the images of a bank and their palette, for files made of several images
+     * @param kind what is made of the images, e.g. "atlas"
+     */
+    public static String bankKey(String kind, SpriteBank bank) {
+        MessageDigest digest = _newDigest();
+        digest.update(IMAGE_KEY_VERSION.getBytes(java.nio.charset.StandardCharsets.US_ASCII));
+        digest.update(kind.getBytes(java.nio.charset.StandardCharsets.US_ASCII));
+        for (AmosImage image : bank.getImages()) {
+            _update(digest, image);
+        }
+        _update(digest, bank.getPalette());
+        return toHex(digest.digest());
+    }
+
+    private static void _update(MessageDigest digest, AmosImage image) {
+        ByteBuffer header = ByteBuffer.allocate(6);
+        header.putShort((short)image.getWidth());
+        header.putShort((short)image.getHeight());
+        header.putShort((short)image.getDepth());
+        header.flip();
+        digest.update(header);
+        digest.update(image.getPlanarData());
+    }
+
+    private static void _update(MessageDigest digest, IndexColorModel palette) {
+        int[] rgbs = new int[palette.getMapSize()];
+        palette.getRGBs(rgbs);
+        ByteBuffer colors = ByteBuffer.allocate(4 * rgbs.length);
+        colors.asIntBuffer().put(rgbs);
+        digest.update(colors);
+    }
+
+    private static MessageDigest _newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (java.security.NoSuchAlgorithmException exc) {
+            throw( new IllegalStateException(exc) );
+        }
+    }
+
+    static String toHex(byte[] hash) {
+        StringBuilder name = new StringBuilder(2 * hash.length + 4);
+        for (byte b : hash) {
+            name.append(Character.forDigit((b >> 4) & 0xf, 16));
+            name.append(Character.forDigit(b & 0xf, 16));
+        }
+        return name.toString();
+    }
+}
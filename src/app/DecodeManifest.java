@@ -0,0 +1,135 @@
+// Copyright (C) 2012 David Gavilan Ruiz
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package app ;
+
+import java.io.File ;
+import java.io.DataInputStream ;
+import java.io.DataOutputStream ;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * What was decoded the last time from an AMOS file, for incremental decoding.
+ * Source chunks are kept as decoded text, and banks as the list of files
+ * written for them, both keyed by the hash of their bytes.
+ */
+public class DecodeManifest {
+
+    static final int MAGIC = 0x414D4D46; // "AMMF"
+    static final int VERSION = 3; // 2: decrypted procedures in the text of chunks, 3: EHB and HAM pictures
+
+    Map<String, String> m_chunks = new HashMap<String, String>();
+    Map<String, List<File>> m_banks = new HashMap<String, List<File>>();
+
+    /**
+     * Reads a manifest. If it doesn't exist or can't be read, it's empty,
+     * so everything is decoded again.
+     */
+    public static DecodeManifest read(File file, boolean isVerbose) {
+        DecodeManifest manifest = new DecodeManifest();
+        if (!file.isFile()) {
+            return manifest;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new java.io.BufferedInputStream(new java.io.FileInputStream(file)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    throw( new java.io.IOException("Unsupported manifest") );
+                }
+                int numChunks = in.readInt();
+                for (int i = 0; i < numChunks; ++i) {
+                    String hash = in.readUTF();
+                    byte[] text = new byte[in.readInt()];
+                    in.readFully(text);
+                    manifest.m_chunks.put(hash, new String(text, StandardCharsets.ISO_8859_1));
+                }
+                int numBanks = in.readInt();
+                for (int i = 0; i < numBanks; ++i) {
+                    String hash = in.readUTF();
+                    int numOutputs = in.readInt();
+                    List<File> outputs = new ArrayList<File>(numOutputs);
+                    for (int j = 0; j < numOutputs; ++j) {
+                        outputs.add(new File(in.readUTF()));
+                    }
+                    manifest.m_banks.put(hash, outputs);
+                }
+            } finally {
+                in.close();
+            }
+        } catch (java.io.IOException exc) {
+            if (isVerbose) {
+                System.err.println("Ignoring "+file+": "+exc);
+            }
+            return new DecodeManifest();
+        }
+        return manifest;
+    }
+
+    /**
+     * Decoded text of a source chunk, or null if it wasn't decoded the last time
+     */
+    public String getChunkText(String hash) {
+        return m_chunks.get(hash);
+    }
+
+    public void putChunkText(String hash, String text) {
+        m_chunks.put(hash, text);
+    }
+
+    /**
+     * Files written for a bank, or null if it wasn't decoded the last time
+     */
+    public List<File> getBankOutputs(String hash) {
+        return m_banks.get(hash);
+    }
+
+    public void putBankOutputs(String hash, List<File> outputs) {
+        m_banks.put(hash, outputs);
+    }
+
+    /**
+     * Writes to a temporary file first, so an interrupted run leaves the old manifest
+     */
+    public void write(File file) throws java.io.IOException {
+        File folder = file.getAbsoluteFile().getParentFile();
+        File tmpFile = File.createTempFile("manifest", ".tmp", folder);
+        try {
+            DataOutputStream out = new DataOutputStream(new java.io.BufferedOutputStream(new java.io.FileOutputStream(tmpFile)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(m_chunks.size());
+                for (Map.Entry<String, String> chunk : m_chunks.entrySet()) {
+                    byte[] text = chunk.getValue().getBytes(StandardCharsets.ISO_8859_1);
+                    out.writeUTF(chunk.getKey());
+                    out.writeInt(text.length);
+                    out.write(text);
+                }
+                out.writeInt(m_banks.size());
+                for (Map.Entry<String, List<File>> bank : m_banks.entrySet()) {
+                    out.writeUTF(bank.getKey());
+                    out.writeInt(bank.getValue().size());
+                    for (File output : bank.getValue()) {
+                        out.writeUTF(output.getPath());
+                    }
+                }
+            } finally {
+                out.close();
+            }
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            tmpFile.delete();
+        }
+    }
+}
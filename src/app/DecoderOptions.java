@@ -0,0 +1,62 @@
+// Copyright (C) 2012 David Gavilan Ruiz
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package app ;
+
+/**
+ * Command line options that affect how a single AMOS file is decoded
+ */
+public class DecoderOptions {
+
+    boolean m_isVerbose = false;
+    boolean m_isSourceOnly = false;
+    boolean m_isBanksOnly = false;
+    boolean m_isAtlas = false;
+    boolean m_isIncremental = false;
+    boolean m_isTolerant = false;
+    boolean m_isResumable = false;
+    // lines of the source code to decode, from 1; 0 to decode the whole file
+    int     m_firstLine = 0;
+    int     m_lastLine = 0;
+    // shared by all the files of a batch; null to skip the symbol statistics
+    amos.io.AMOSSymbolTable m_symbolTable = null;
+    String  m_imageFolder = "";
+    String  m_dataFolder = "";
+    // null to write images on the decoding thread
+    ImageWriterPool m_imageWriter = null;
+    // null to always parse the source code
+    SourceCache m_sourceCache = null;
+    // null to always decode the banks
+    ContentStore m_contentStore = null;
+    // null to decode the source code on a single thread
+    java.util.concurrent.ForkJoinPool m_sourcePool = null;
+
+    /**
+     * Copy of these options, writing images and memory banks to the given folder
+     */
+    public DecoderOptions withOutputFolder(String folder) {
+        DecoderOptions options = new DecoderOptions();
+        options.m_isVerbose = m_isVerbose;
+        options.m_isSourceOnly = m_isSourceOnly;
+        options.m_isBanksOnly = m_isBanksOnly;
+        options.m_isAtlas = m_isAtlas;
+        options.m_isIncremental = m_isIncremental;
+        options.m_isTolerant = m_isTolerant;
+        options.m_isResumable = m_isResumable;
+        options.m_firstLine = m_firstLine;
+        options.m_lastLine = m_lastLine;
+        options.m_symbolTable = m_symbolTable;
+        options.m_imageFolder = folder;
+        options.m_dataFolder = folder;
+        options.m_imageWriter = m_imageWriter;
+        options.m_sourceCache = m_sourceCache;
+        options.m_contentStore = m_contentStore;
+        options.m_sourcePool = m_sourcePool;
+        return options;
+    }
+}
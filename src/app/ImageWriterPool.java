@@ -0,0 +1,111 @@
+// Copyright (C) 2012 David Gavilan Ruiz
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package app ;
+
+import java.io.File ;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+
+/**
+ * Encodes images to PNG files on a pool of threads, while the caller goes on decoding.
+ * The queue of pending images is bounded: when it's full, the caller encodes
+ * the image itself, so decoding can't get too far ahead of encoding.
+ * The threads are daemons, so an error that skips shutdown() doesn't keep the program running.
+ */
+public class ImageWriterPool {
+
+    ThreadPoolExecutor m_pool;
+
+    public ImageWriterPool(int numThreads) {
+        m_pool = new ThreadPoolExecutor(numThreads, numThreads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(4 * numThreads),
+            new ThreadFactory() {
+                public Thread newThread(Runnable task) {
+                    Thread thread = new Thread(task, "ImageWriter");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            },
+            new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Queues an image to be written as PNG.
+     * Errors are reported by waitFor().
+     */
+    public Future<Void> write(final BufferedImage img, final File file) {
+        return write(img, file, null, null);
+    }
+
+    /**
+     * Queues an image to be written as PNG, and then added to the store with the given key
+     * @param store null to only write the image
+     */
+    public Future<Void> write(final BufferedImage img, final File file, final ContentStore store, final String key) {
+        return m_pool.submit(new Callable<Void>() {
+            public Void call() throws java.io.IOException {
+                writeImage(img, file);
+                if (store != null) {
+                    store.add(key, file);
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Waits until all the given images are written.
+     * @throws java.io.IOException the first error found writing the images
+     */
+    public static void waitFor(List<Future<Void>> pending) throws java.io.IOException {
+        java.io.IOException error = null;
+        for (Future<Void> future : pending) {
+            try {
+                future.get();
+            } catch (ExecutionException exc) {
+                if (error != null) continue;
+                if (exc.getCause() instanceof java.io.IOException) {
+                    error = (java.io.IOException)exc.getCause();
+                } else {
+                    error = new java.io.IOException(exc.getCause());
+                }
+            } catch (InterruptedException exc) {
+                Thread.currentThread().interrupt();
+                throw( new java.io.InterruptedIOException("Interrupted writing images") );
+            }
+        }
+        pending.clear();
+        if (error != null) throw error;
+    }
+
+    /**
+     * Finishes the queued images and stops the threads
+     */
+    public void shutdown() throws InterruptedException {
+        m_pool.shutdown();
+        m_pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes an image as PNG on the calling thread
+     */
+    public static void writeImage(BufferedImage img, File file) throws java.io.IOException {
+        if (!ImageIO.write(img, "png", file)) {
+            throw( new java.io.IOException("No PNG writer for "+file) );
+        }
+    }
+}
@@ -0,0 +1,125 @@
+// Copyright (C) 2012 David Gavilan Ruiz
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package app ;
+
+import java.io.File ;
+import java.io.PrintStream ;
+import java.io.Writer ;
+import java.io.BufferedWriter ;
+import java.io.OutputStreamWriter ;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.concurrent.Future;
+import amos.io.* ;
+
+/**
+ * Decodes an AMOS file again, reusing what didn't change since the last time.
+ * The source code is split in procedures, and a procedure whose bytes have the
+ * same hash as the last time is copied from the manifest instead of parsed.
+ * A bank with the same hash isn't decoded if all its output files still exist.
+ * The manifest of each file, Manifest_NAME.dat (e.g. Manifest_GAME.AMOS.dat),
+ * is kept in the data folder, so several files can share a data folder.
+ */
+public class IncrementalDecoder {
+
+    public static void decode(File file, PrintStream out, DecoderOptions options) throws java.io.IOException {
+        boolean isVerbose = options.m_isVerbose;
+        File manifestFile = new File(options.m_dataFolder+"Manifest_"+file.getName()+".dat");
+        DecodeManifest previous = DecodeManifest.read(manifestFile, isVerbose);
+        DecodeManifest manifest = new DecodeManifest();
+        AMOSFile amosFile = new AMOSFile(file, isVerbose);
+        List<Future<Void>> pendingImages = new ArrayList<Future<Void>>();
+        try {
+            if (!options.m_isBanksOnly) {
+                if (options.m_symbolTable != null) {
+                    // symbol statistics are for the whole program, so it's all parsed
+                    AMOSFileInputStream fileDecoder = amosFile.openSource();
+                    AMOSFileDecoder.decodeSource(file, fileDecoder, out, options);
+                } else {
+                    _decodeSource(amosFile, out, options, previous, manifest);
+                }
+            }
+            if (!options.m_isSourceOnly) {
+                _decodeBanks(amosFile, options, previous, manifest, pendingImages);
+            }
+            // the manifest can only list files that are on disk
+            ImageWriterPool.waitFor(pendingImages);
+        } finally {
+            amosFile.close();
+        }
+        manifest.write(manifestFile);
+    }
+
+    private static void _decodeSource(AMOSFile amosFile, PrintStream out, DecoderOptions options,
+        DecodeManifest previous, DecodeManifest manifest)
+        throws java.io.IOException
+    {
+        AMOSSourceIndex index = amosFile.getSourceIndex();
+        String[] hashes = new String[index.getNumChunks()];
+        String[] texts = new String[index.getNumChunks()];
+        int numDecoded = 0;
+        for (int chunk = 0; chunk < hashes.length; ++chunk) {
+            long offset = index.getChunkOffset(chunk);
+            long size = index.getChunkSize(chunk);
+            hashes[chunk] = ContentStore.key("source", amosFile.getBytes(offset, size), "");
+            texts[chunk] = previous.getChunkText(hashes[chunk]);
+            if (texts[chunk] == null) ++numDecoded;
+        }
+        try {
+            ParallelSourceDecoder.decodeChunks(amosFile, texts, options.m_sourcePool);
+        } catch (java.io.IOException exc) {
+            // thrown again by writeChunks(), after the lines before the error
+        }
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out));
+        try {
+            ParallelSourceDecoder.writeChunks(amosFile, texts, writer);
+        } finally {
+            writer.flush();
+        }
+        for (int chunk = 0; chunk < texts.length; ++chunk) {
+            manifest.putChunkText(hashes[chunk], texts[chunk]);
+        }
+        if (options.m_isVerbose) {
+            System.err.println("Decoded "+numDecoded+" of "+index.getNumChunks()+" source chunks");
+        }
+    }
+
+    private static void _decodeBanks(AMOSFile amosFile, DecoderOptions options,
+        DecodeManifest previous, DecodeManifest manifest, List<Future<Void>> pendingImages)
+        throws java.io.IOException
+    {
+        // the files written for a bank depend on these options too
+        // and so do the folders: outputs in other folders don't count
+        String kind = (options.m_isAtlas ? "bank-atlas" : "bank")
+            +"|"+new File(options.m_imageFolder).getAbsolutePath()+"|"+new File(options.m_dataFolder).getAbsolutePath();
+        int numDecoded = 0;
+        for (AMOSBankInfo bank : amosFile.getBanks()) {
+            String hash = ContentStore.key(kind, amosFile.getBytes(bank), "");
+            List<File> outputs = previous.getBankOutputs(hash);
+            if (outputs == null || !_exist(outputs)) {
+                outputs = new ArrayList<File>();
+                AMOSFileInputStream fileDecoder = amosFile.openBank(bank);
+                AMOSFileDecoder.decodeBank(fileDecoder, options, pendingImages, outputs);
+                ++numDecoded;
+            }
+            manifest.putBankOutputs(hash, outputs);
+        }
+        if (options.m_isVerbose) {
+            System.err.println("Decoded "+numDecoded+" of "+amosFile.getBanks().size()+" banks");
+        }
+    }
+
+    private static boolean _exist(List<File> files) {
+        for (File file : files) {
+            if (!file.isFile()) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,173 @@
+// Copyright (C) 2012 David Gavilan Ruiz
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package app ;
+
+import java.io.File ;
+import java.io.PrintStream ;
+import java.io.StringWriter ;
+import java.io.Writer ;
+import java.io.BufferedWriter ;
+import java.io.OutputStreamWriter ;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import amos.io.* ;
+
+/**
+ * Decodes the source code one procedure at a time, on a fork-join pool.
+ * Procedures don't depend on each other, so the chunks of the source index
+ * are parsed concurrently from the same mapped file, and their text is
+ * written in order at the end.
+ */
+public class ParallelSourceDecoder {
+
+    /**
+     * Decodes all the source code of the file to the given stream
+     */
+    public static void decode(File file, PrintStream out, ForkJoinPool pool, boolean isVerbose) throws java.io.IOException {
+        AMOSFile amosFile = new AMOSFile(file, isVerbose);
+        try {
+            String[] texts = new String[amosFile.getSourceIndex().getNumChunks()];
+            try {
+                decodeChunks(amosFile, texts, pool);
+            } catch (java.io.IOException exc) {
+                // thrown again by writeChunks(), after the lines before the error
+            }
+            if (isVerbose) {
+                System.err.println("Decoded "+texts.length+" source chunks in parallel");
+            }
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out));
+            try {
+                writeChunks(amosFile, texts, writer);
+            } finally {
+                writer.flush();
+            }
+        } finally {
+            amosFile.close();
+        }
+    }
+
+    /**
+     * Decodes the chunks of the source index whose text is null
+     * @param texts one per chunk of amosFile.getSourceIndex()
+     * @param pool null to decode them on this thread
+     */
+    public static void decodeChunks(AMOSFile amosFile, String[] texts, ForkJoinPool pool) throws java.io.IOException {
+        AMOSSourceIndex index = amosFile.getSourceIndex();
+        if (pool == null) {
+            // not task.invoke(), which would fork to the common pool
+            for (int chunk = 0; chunk < texts.length; ++chunk) {
+                if (texts[chunk] == null) {
+                    texts[chunk] = decodeChunk(amosFile, index, chunk);
+                }
+            }
+            return;
+        }
+        if (texts.length == 0) {
+            return;
+        }
+        try {
+            pool.invoke(new ChunkTask(amosFile, index, texts, 0, texts.length));
+        } catch (ChunkException exc) {
+            throw( (java.io.IOException)exc.getCause() );
+        }
+    }
+
+    /**
+     * Writes the texts of all the chunks in order. Chunks left null because decodeChunks()
+     * failed are decoded here, so the lines before an error are written, as with a single
+     * thread, and then the error is thrown.
+     */
+    public static void writeChunks(AMOSFile amosFile, String[] texts, Writer out) throws java.io.IOException {
+        AMOSSourceIndex index = amosFile.getSourceIndex();
+        for (int chunk = 0; chunk < texts.length; ++chunk) {
+            if (texts[chunk] == null) {
+                StringWriter text = new StringWriter();
+                try {
+                    decodeChunk(amosFile, index, chunk, text);
+                } finally {
+                    out.write(text.toString());
+                }
+                texts[chunk] = text.toString();
+            } else {
+                out.write(texts[chunk]);
+            }
+        }
+    }
+
+    /**
+     * Decodes a single chunk of the source index to text
+     */
+    public static String decodeChunk(AMOSFile amosFile, AMOSSourceIndex index, int chunk) throws java.io.IOException {
+        StringWriter text = new StringWriter();
+        decodeChunk(amosFile, index, chunk, text);
+        return text.toString();
+    }
+
+    /**
+     * Decodes a single chunk of the source index; the lines before an error are written
+     */
+    static void decodeChunk(AMOSFile amosFile, AMOSSourceIndex index, int chunk, Writer out) throws java.io.IOException {
+        AMOSTokenReader reader = amosFile.openSourceRange(index.getChunkOffset(chunk), index.getChunkSize(chunk));
+        AMOSSourcePrinter printer = new AMOSSourcePrinter(out);
+        try {
+            reader.parse(printer);
+        } catch (java.io.StreamCorruptedException exc) {
+            throw( printer.lineError(exc) );
+        }
+    }
+
+    /**
+     * Carries IOExceptions out of the pool
+     */
+    private static class ChunkException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ChunkException(java.io.IOException cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * Decodes the chunks [first, last), splitting the range in halves
+     */
+    private static class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        AMOSFile m_file;
+        AMOSSourceIndex m_index;
+        String[] m_texts;
+        int m_first;
+        int m_last;
+
+        ChunkTask(AMOSFile file, AMOSSourceIndex index, String[] texts, int first, int last) {
+            m_file = file;
+            m_index = index;
+            m_texts = texts;
+            m_first = first;
+            m_last = last;
+        }
+
+        protected void compute() {
+            if (m_last - m_first > 1) {
+                int middle = (m_first + m_last) >>> 1;
+                invokeAll(new ChunkTask(m_file, m_index, m_texts, m_first, middle),
+                    new ChunkTask(m_file, m_index, m_texts, middle, m_last));
+                return;
+            }
+            if (m_texts[m_first] != null) {
+                return;
+            }
+            try {
+                m_texts[m_first] = decodeChunk(m_file, m_index, m_first);
+            } catch (java.io.IOException exc) {
+                throw( new ChunkException(exc) );
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+// Copyright (C) 2012 David Gavilan Ruiz
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package app ;
+
+import java.io.File ;
+import java.io.FileOutputStream ;
+import java.io.Writer ;
+import java.io.BufferedWriter ;
+import java.io.OutputStreamWriter ;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.concurrent.Future;
+import amos.io.* ;
+
+/**
+ * Decodes the source code line by line, for files that may be huge, truncated or corrupted.
+ * In tolerant mode, a corrupt line is skipped using its length, and a truncated file
+ * keeps the lines before the end of the data.
+ * With a checkpoint, the cursor of the reader is saved every CHECKPOINT_LINES lines
+ * next to the output (NAME.pamos.cursor), so an interrupted decode goes on from there.
+ * The cursor file also has the size and date of the input file, so it's ignored if the
+ * file has changed, or if it was left by a different file.
+ */
+public class ResumableDecoder {
+
+    static final int CHECKPOINT_LINES = 1000;
+
+    File                m_file;
+    AMOSFileInputStream m_fileDecoder;
+    Writer              m_writer;
+    DecoderOptions      m_options;
+    // checkpoints, if any
+    File                m_cursorFile;
+    FileOutputStream    m_stream;
+
+    /**
+     * @param fileDecoder stream of the file, at the beginning of the source code or at a cursor
+     */
+    public ResumableDecoder(File file, AMOSFileInputStream fileDecoder, Writer writer, DecoderOptions options) {
+        m_file = file;
+        m_fileDecoder = fileDecoder;
+        m_writer = writer;
+        m_options = options;
+    }
+
+    /**
+     * Saves a checkpoint every CHECKPOINT_LINES lines
+     * @param stream where the writer ends up, so its length can be saved too
+     */
+    public void setCheckpoint(File cursorFile, FileOutputStream stream) {
+        m_cursorFile = cursorFile;
+        m_stream = stream;
+    }
+
+    /**
+     * Decodes the rest of the source code
+     * @return false if the file was truncated, in tolerant mode
+     */
+    public boolean decodeSource() throws java.io.IOException {
+        AMOSTokenReader reader = m_fileDecoder.getTokenReader();
+        AMOSSourcePrinter printer = new AMOSSourcePrinter(m_writer);
+        while (reader.hasNext()) {
+            try {
+                reader.parseLine(printer);
+            } catch (java.io.EOFException exc) {
+                if (!m_options.m_isTolerant) throw exc;
+                if (reader.isTruncated()) {
+                    System.err.println(m_file+": truncated at line "+reader.getLineNumber());
+                    return false;
+                }
+                // e.g. a corrupt line of a locked procedure, read from its decrypted copy
+                reader.resync();
+                System.err.println(m_file+": skipping line "+reader.getLineNumber()+": "+exc.getMessage());
+            } catch (java.io.StreamCorruptedException exc) {
+                if (!m_options.m_isTolerant) throw( printer.lineError(exc) );
+                reader.resync();
+                System.err.println(m_file+": skipping line "+reader.getLineNumber()+": "+printer.lineError(exc).getMessage());
+            }
+            if (m_cursorFile != null && reader.getLineNumber() % CHECKPOINT_LINES == 0) {
+                _checkpoint(reader.getCursor());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes a file to sourceFile and the folders in the options.
+     * If there's a cursor file from a previous run, the source code goes on from it.
+     */
+    public static void decode(File file, File sourceFile, DecoderOptions options) throws java.io.IOException {
+        boolean isVerbose = options.m_isVerbose;
+        File cursorFile = new File(sourceFile.getPath()+".cursor");
+        AMOSCursor cursor = null;
+        long outputLength = 0;
+        if (cursorFile.isFile() && sourceFile.isFile()) {
+            try {
+                String text = new String(Files.readAllBytes(cursorFile.toPath()), StandardCharsets.US_ASCII);
+                String[] fields = text.split(" ", 4);
+                if (fields.length == 4 && Long.parseLong(fields[0]) == file.length()
+                    && Long.parseLong(fields[1]) == file.lastModified()) {
+                    outputLength = Long.parseLong(fields[2]);
+                    cursor = AMOSCursor.parse(fields[3]);
+                }
+            } catch (IllegalArgumentException exc) {
+                // including NumberFormatException; start over
+                cursor = null;
+            }
+            if (cursor != null && outputLength > sourceFile.length()) {
+                cursor = null;
+            }
+            if (isVerbose) {
+                System.err.println((cursor == null) ? "Ignoring "+cursorFile : file+": going on from line "+(cursor.getLine() + 1));
+            }
+        }
+        AMOSFileInputStream fileDecoder = (cursor == null) ? new AMOSFileInputStream(file, isVerbose)
+            : new AMOSFileInputStream(file, cursor, isVerbose);
+        List<Future<Void>> pendingImages = new ArrayList<Future<Void>>();
+        try {
+            FileOutputStream stream = new FileOutputStream(sourceFile, cursor != null);
+            boolean isComplete;
+            try {
+                if (cursor != null) {
+                    // lines after the checkpoint are written again
+                    stream.getChannel().truncate(outputLength);
+                }
+                Writer writer = new BufferedWriter(new OutputStreamWriter(stream));
+                try {
+                    if (options.m_isBanksOnly) {
+                        fileDecoder.skipSourceCode();
+                        isComplete = true;
+                    } else {
+                        ResumableDecoder decoder = new ResumableDecoder(file, fileDecoder, writer, options);
+                        decoder.setCheckpoint(cursorFile, stream);
+                        isComplete = decoder.decodeSource();
+                    }
+                } finally {
+                    writer.flush();
+                }
+            } finally {
+                stream.close();
+            }
+            // a truncated file has no banks
+            if (isComplete && !options.m_isSourceOnly) {
+                AMOSFileDecoder.decodeBanks(fileDecoder, options, pendingImages);
+            }
+            ImageWriterPool.waitFor(pendingImages);
+        } finally {
+            fileDecoder.close();
+        }
+        cursorFile.delete();
+        new File(cursorFile.getPath()+".tmp").delete();
+    }
+
+    /**
+     * Writes the size and date of the input file, the length of the output so far
+     * and the cursor, through a temporary file, so there's always a whole cursor file
+     */
+    private void _checkpoint(AMOSCursor cursor) throws java.io.IOException {
+        m_writer.flush();
+        String text = m_file.length()+" "+m_file.lastModified()+" "+m_stream.getChannel().size()+" "+cursor+"\n";
+        // a fixed name, so a run that is killed here leaves nothing behind
+        File tmpFile = new File(m_cursorFile.getPath()+".tmp");
+        Files.write(tmpFile.toPath(), text.getBytes(StandardCharsets.US_ASCII));
+        Files.move(tmpFile.toPath(), m_cursorFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,168 @@
+// Copyright (C) 2012 David Gavilan Ruiz
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package app ;
+
+import java.io.File ;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import amos.io.* ;
+
+/**
+ * Folder of decoded programs, in the format of AMOSIRWriter.
+ * Each file is named after the SHA-256 hash of the AMOS file it comes from,
+ * so a program that hasn't changed is replayed instead of parsed again.
+ * Line indexes of the source code are kept in the same folder.
+ * It can be shared by several threads.
+ */
+public class SourceCache {
+
+    File m_folder;
+
+    public SourceCache(File folder) {
+        m_folder = folder;
+    }
+
+    /**
+     * Pushes the source code of the file to the handler, from the cache if possible.
+     * On a cache miss, the source is decoded with fileDecoder and then cached.
+     * @param fileDecoder stream of the same file, at the beginning of the source code
+     */
+    public void decodeSource(File file, AMOSFileInputStream fileDecoder, AMOSTokenHandler handler, boolean isVerbose)
+        throws java.io.IOException
+    {
+        byte[] hash = contentHash(file);
+        File cacheFile = getFile(hash);
+        if (cacheFile.isFile()) {
+            AMOSIRReader reader = null;
+            try {
+                reader = new AMOSIRReader(ByteBuffer.wrap(Files.readAllBytes(cacheFile.toPath())), hash);
+            } catch (java.io.IOException exc) {
+                // including UnsupportedFormat; the file will be replaced
+                if (isVerbose) {
+                    System.err.println("Ignoring "+cacheFile+": "+exc);
+                }
+            }
+            if (reader != null) {
+                if (isVerbose) {
+                    System.err.println("Source code from "+cacheFile);
+                }
+                try {
+                    reader.replay(handler);
+                } catch (java.io.StreamCorruptedException exc) {
+                    cacheFile.delete();
+                    throw( new java.io.StreamCorruptedException(cacheFile+" was corrupted and has been deleted: "+exc.getMessage()) );
+                }
+                fileDecoder.skipSourceCode();
+                return;
+            }
+        }
+        AMOSIRWriter writer = new AMOSIRWriter(handler);
+        fileDecoder.getTokenReader().parse(writer);
+        _write(writer, hash, cacheFile);
+    }
+
+    /**
+     * Line index of the source code of an AMOS file, saved in the cache
+     * the first time, so it's only scanned once
+     */
+    public AMOSSourceIndex getSourceIndex(File file, AMOSFile amosFile, boolean isVerbose)
+        throws java.io.IOException
+    {
+        byte[] hash = contentHash(file);
+        File indexFile = new File(m_folder, ContentStore.toHex(hash)+".ali");
+        if (indexFile.isFile()) {
+            try {
+                java.io.DataInputStream in = new java.io.DataInputStream(
+                    new java.io.BufferedInputStream(new java.io.FileInputStream(indexFile)));
+                try {
+                    amosFile.setSourceIndex(new AMOSSourceIndex(in));
+                } finally {
+                    in.close();
+                }
+                return amosFile.getSourceIndex();
+            } catch (java.io.IOException exc) {
+                // including UnsupportedFormat; the file will be replaced
+                if (isVerbose) {
+                    System.err.println("Ignoring "+indexFile+": "+exc);
+                }
+            }
+        }
+        AMOSSourceIndex index = amosFile.getSourceIndex();
+        _mkdirs();
+        File tmpFile = File.createTempFile("ali", ".tmp", m_folder);
+        try {
+            java.io.DataOutputStream out = new java.io.DataOutputStream(
+                new java.io.BufferedOutputStream(new java.io.FileOutputStream(tmpFile)));
+            try {
+                index.writeTo(out);
+            } finally {
+                out.close();
+            }
+            Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            tmpFile.delete();
+        }
+        return index;
+    }
+
+    /**
+     * Cache file for the given hash
+     */
+    public File getFile(byte[] hash) {
+        return new File(m_folder, ContentStore.toHex(hash)+".air");
+    }
+
+    /**
+     * SHA-256 of the contents of a file
+     */
+    public static byte[] contentHash(File file) throws java.io.IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (java.security.NoSuchAlgorithmException exc) {
+            throw( new java.io.IOException(exc) );
+        }
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            digest.update(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            channel.close();
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Writes to a temporary file first, so other threads never see half a file
+     */
+    private void _write(AMOSIRWriter writer, byte[] hash, File cacheFile) throws java.io.IOException {
+        _mkdirs();
+        File tmpFile = File.createTempFile("amir", ".tmp", m_folder);
+        try {
+            java.io.OutputStream stream = new java.io.BufferedOutputStream(new java.io.FileOutputStream(tmpFile));
+            try {
+                writer.writeTo(stream, hash);
+            } finally {
+                stream.close();
+            }
+            Files.move(tmpFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            tmpFile.delete();
+        }
+    }
+
+    private void _mkdirs() throws java.io.IOException {
+        if (!m_folder.isDirectory() && !m_folder.mkdirs() && !m_folder.isDirectory()) {
+            throw( new java.io.IOException("Can't create "+m_folder) );
+        }
+    }
+}
@@ -0,0 +1,165 @@
+// Copyright (C) 2012 David Gavilan Ruiz
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package app ;
+
+import java.io.File ;
+import java.io.PrintWriter ;
+import java.io.FileWriter ;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import amos.img.AmosImage;
+import amos.img.PlanarImage;
+import amos.img.SpriteBank;
+
+/**
+ * Packs all the images of a bank into a few sheets.
+ * Images are sorted by height and placed left to right in rows ("shelves").
+ * A CSV manifest gives the rectangle and hot spot of every image.
+ */
+public class SpriteAtlas {
+
+    static final int MAX_SHEET_SIZE = 1024;
+
+    SpriteBank m_bank;
+    List<AmosImage> m_images;
+    int[] m_sheet;
+    int[] m_x;
+    int[] m_y;
+    List<int[]> m_sheetSizes; // width, height
+
+    public SpriteAtlas(SpriteBank bank) {
+        m_bank = bank;
+        m_images = bank.getImages();
+        int numImages = m_images.size();
+        m_sheet = new int[numImages];
+        m_x = new int[numImages];
+        m_y = new int[numImages];
+        m_sheetSizes = new ArrayList<int[]>();
+        _pack();
+    }
+
+    public int getNumSheets() {
+        return m_sheetSizes.size();
+    }
+
+    /**
+     * Writes the sheets as NAME_00.png, NAME_01.png... and the manifest as NAME.csv
+     * @return the files written
+     */
+    public List<File> write(String folder, String name, DecoderOptions options, List<java.util.concurrent.Future<Void>> pending)
+        throws java.io.IOException
+    {
+        // the sheets only depend on the images, so they can be stored
+        List<File> files = new ArrayList<File>();
+        String bankKey = null;
+        if (options.m_contentStore != null) {
+            bankKey = ContentStore.bankKey("atlas", m_bank);
+        }
+        for (int sheet = 0; sheet < getNumSheets(); ++sheet) {
+            File file = new File(folder+String.format("%s_%02d.png", name, sheet));
+            files.add(file);
+            String key = null;
+            if (bankKey != null) {
+                key = bankKey+String.format("_%02d.png", sheet);
+                if (AMOSFileDecoder.fetchImage(key, file, options)) continue;
+            }
+            AMOSFileDecoder.writeImage(_createSheet(sheet), file, options, pending, key);
+        }
+        files.add(new File(folder+name+".csv"));
+        PrintWriter manifest = new PrintWriter(new FileWriter(folder+name+".csv"));
+        try {
+            manifest.println("image,sheet,x,y,width,height,hotspotX,hotspotY");
+            for (int i = 0; i < m_images.size(); ++i) {
+                AmosImage img = m_images.get(i);
+                manifest.println((i+1)+","+m_sheet[i]+","+m_x[i]+","+m_y[i]+","
+                    +img.getWidth()+","+img.getHeight()+","
+                    +img.getHotspotX()+","+img.getHotspotY());
+            }
+        } finally {
+            manifest.close();
+        }
+        if (manifest.checkError()) {
+            throw( new java.io.IOException("Can't write "+folder+name+".csv") );
+        }
+        return files;
+    }
+
+    /**
+     * Shelf packing, tallest images first
+     */
+    private void _pack() {
+        Integer[] order = new Integer[m_images.size()];
+        int sheetWidth = MAX_SHEET_SIZE;
+        for (int i = 0; i < order.length; ++i) {
+            order[i] = i;
+            sheetWidth = Math.max(sheetWidth, m_images.get(i).getWidth());
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return m_images.get(b).getHeight() - m_images.get(a).getHeight();
+            }
+        });
+        int sheet = -1;
+        int x = 0, y = 0, shelfHeight = 0, usedWidth = 0;
+        for (int index : order) {
+            AmosImage img = m_images.get(index);
+            if (sheet >= 0 && x + img.getWidth() > sheetWidth) {
+                // next shelf
+                y += shelfHeight;
+                x = 0;
+                shelfHeight = 0;
+            }
+            if (sheet < 0 || (y > 0 && y + img.getHeight() > MAX_SHEET_SIZE)) {
+                // next sheet
+                if (sheet >= 0) {
+                    m_sheetSizes.set(sheet, new int[] {usedWidth, y + shelfHeight});
+                }
+                m_sheetSizes.add(new int[] {0, 0});
+                ++sheet;
+                x = 0;
+                y = 0;
+                shelfHeight = 0;
+                usedWidth = 0;
+            }
+            m_sheet[index] = sheet;
+            m_x[index] = x;
+            m_y[index] = y;
+            x += img.getWidth();
+            usedWidth = Math.max(usedWidth, x);
+            shelfHeight = Math.max(shelfHeight, img.getHeight());
+        }
+        if (sheet >= 0) {
+            m_sheetSizes.set(sheet, new int[] {usedWidth, y + shelfHeight});
+        }
+    }
+
+    private BufferedImage _createSheet(int sheet) {
+        int[] size = m_sheetSizes.get(sheet);
+        // all the images of a bank share the same palette, extended to 64 colors
+        // as in PlanarImage if there are 6-plane (Extra-Half-Brite) images
+        IndexColorModel palette = m_bank.getPalette();
+        for (AmosImage image : m_images) {
+            if (image.getDepth() > 5 && palette.getMapSize() < 64) {
+                palette = PlanarImage.createExtraHalfBritePalette(palette);
+                break;
+            }
+        }
+        BufferedImage img = new BufferedImage(size[0], size[1], BufferedImage.TYPE_BYTE_INDEXED, palette);
+        for (int i = 0; i < m_images.size(); ++i) {
+            if (m_sheet[i] == sheet) {
+                img.getRaster().setRect(m_x[i], m_y[i], m_images.get(i).toBufferedImage().getRaster());
+            }
+        }
+        return img;
+    }
+}